@@ -0,0 +1,81 @@
+package com.microsoft.migration.assets.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
+import com.microsoft.migration.assets.service.CachingStorageService;
+import com.microsoft.migration.assets.service.StorageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Caches in front of the storage service. Caffeine evicts by W-TinyLFU, so hot entries survive
+ * bursts of one-off reads; hits, misses and evictions are exposed as cache.* metrics.
+ */
+@Configuration
+@ConditionalOnProperty(name = "cache.enabled", havingValue = "true", matchIfMissing = true)
+public class CacheConfig {
+
+    @Value("${cache.object-info.max-entries:10000}")
+    private long objectInfoMaxEntries;
+
+    @Value("${cache.object-info.ttl:30s}")
+    private Duration objectInfoTtl;
+
+    @Value("${cache.object-pages.max-entries:1000}")
+    private long pageMaxEntries;
+
+    @Value("${cache.object-pages.ttl:10s}")
+    private Duration pageTtl;
+
+    // Direct memory budget for cached bodies; keep -XX:MaxDirectMemorySize above it
+    @Value("${cache.object-bodies.max-size:64MB}")
+    private DataSize bodyMaxSize;
+
+    @Value("${cache.object-bodies.max-entry-size:256KB}")
+    private DataSize bodyMaxEntrySize;
+
+    @Value("${cache.object-bodies.ttl:10m}")
+    private Duration bodyTtl;
+
+    /**
+     * Wraps the storage service of the active profile. The parameter resolves to that service, since
+     * a bean is never injected into itself while other candidates exist.
+     */
+    @Bean
+    @Primary
+    public StorageService cachingStorageService(StorageService storageService, MeterRegistry meterRegistry) {
+        Cache<String, S3StorageItem> objectInfoCache = Caffeine.newBuilder()
+                .maximumSize(objectInfoMaxEntries)
+                .expireAfterWrite(objectInfoTtl)
+                .recordStats()
+                .build();
+        Cache<CachingStorageService.PageKey, S3StoragePage> pageCache = Caffeine.newBuilder()
+                .maximumSize(pageMaxEntries)
+                .expireAfterWrite(pageTtl)
+                .recordStats()
+                .build();
+        // Expire after write, so a hot body is still read again once its ttl is over
+        Cache<String, CachingStorageService.CachedBody> bodyCache = Caffeine.newBuilder()
+                .maximumWeight(bodyMaxSize.toBytes())
+                .weigher((String key, CachingStorageService.CachedBody cached) -> cached.body().capacity())
+                .expireAfterWrite(bodyTtl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, objectInfoCache, "storage.object-info");
+        CaffeineCacheMetrics.monitor(meterRegistry, pageCache, "storage.object-pages");
+        CaffeineCacheMetrics.monitor(meterRegistry, bodyCache, "storage.object-bodies");
+
+        return new CachingStorageService(storageService, objectInfoCache, pageCache, bodyCache, bodyMaxEntrySize.toBytes());
+    }
+}
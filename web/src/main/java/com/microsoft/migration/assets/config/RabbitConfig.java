@@ -1,6 +1,11 @@
 package com.microsoft.migration.assets.config;
 
 import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.ExchangeBuilder;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.QueueBuilder;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
@@ -10,14 +15,52 @@ import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
 public class RabbitConfig {
-    public static final String QUEUE_NAME = "image-processing";
+    // Messages are routed by storage type, so each worker only receives the jobs it can process
+    public static final String EXCHANGE_NAME = "image-processing";
+    public static final String QUEUE_PREFIX = "image-processing.";
+    public static final List<String> STORAGE_TYPES = List.of("s3", "local");
+    public static final String BACKUP_QUEUE_NAME = QUEUE_PREFIX + "backup";
 
     @Bean
-    public Queue imageProcessingQueue() {
-        return QueueBuilder.durable(QUEUE_NAME).build();
+    public DirectExchange imageProcessingExchange() {
+        return ExchangeBuilder.directExchange(EXCHANGE_NAME).durable(true).build();
+    }
+
+    /**
+     * One queue per storage type, declared here too so jobs published before a worker starts are kept
+     */
+    @Bean
+    public Declarables imageProcessingQueues(DirectExchange imageProcessingExchange) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (String storageType : STORAGE_TYPES) {
+            Queue queue = QueueBuilder.durable(queueName(storageType)).build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(imageProcessingExchange).with(storageType));
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * The backup monitor gets its own copy of every job, whatever the storage type. Workers dead-letter
+     * their retries through a separate retry exchange, so only the original publish lands here.
+     */
+    @Bean
+    @Profile("backup")
+    public Declarables backupQueue(DirectExchange imageProcessingExchange) {
+        Queue queue = QueueBuilder.durable(BACKUP_QUEUE_NAME).build();
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(queue);
+        for (String storageType : STORAGE_TYPES) {
+            declarables.add(BindingBuilder.bind(queue).to(imageProcessingExchange).with(storageType));
+        }
+        return new Declarables(declarables);
     }
 
     @Bean
@@ -35,4 +78,8 @@ public class RabbitConfig {
         factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
         return factory;
     }
+
+    public static String queueName(String storageType) {
+        return QUEUE_PREFIX + storageType;
+    }
 }
@@ -1,21 +1,41 @@
 package com.microsoft.migration.assets.controller;
 
+import com.microsoft.migration.assets.model.PresignedUpload;
 import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
+import com.microsoft.migration.assets.model.UploadResult;
+import com.microsoft.migration.assets.service.BulkUploadService;
 import com.microsoft.migration.assets.service.StorageService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Controller
@@ -23,17 +43,35 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class S3Controller {
 
+    // Request attributes understood by Tomcat's NIO connector for sendfile responses
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private static final int DEFAULT_PAGE_SIZE = 24;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final StorageService storageService;
+    private final BulkUploadService bulkUploadService;
 
     @GetMapping
-    public String listObjects(Model model) {
-        List<S3StorageItem> objects = storageService.listObjects();
-        model.addAttribute("objects", objects);
+    public String listObjects(@RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+                              @RequestParam(required = false) String token,
+                              Model model) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        S3StoragePage page = storageService.listObjects(pageSize, token);
+        model.addAttribute("objects", page.getItems());
+        model.addAttribute("pageSize", pageSize);
+        model.addAttribute("currentToken", token);
+        model.addAttribute("nextToken", page.getNextContinuationToken());
         return "list";
     }
 
     @GetMapping("/upload")
-    public String uploadForm() {
+    public String uploadForm(Model model) {
+        // The page only hashes files and asks for upload URLs when direct uploads are on
+        model.addAttribute("presignedUpload", storageService.isPresignedUploadEnabled());
         return "upload";
     }
 
@@ -54,13 +92,93 @@ public class S3Controller {
         }
     }
     
+    /**
+     * Upload the raw request body straight to storage, bypassing the servlet multipart layer
+     * so large assets are never buffered in full.
+     */
+    @PutMapping("/upload/stream")
+    @ResponseBody
+    public ResponseEntity<Map<String, String>> uploadObjectStream(@RequestParam String filename,
+                                                                  HttpServletRequest request) {
+        try {
+            String contentType = request.getContentType() != null
+                    ? request.getContentType()
+                    : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+            String key = storageService.uploadObject(filename, contentType, request.getInputStream(),
+                    request.getContentLengthLong());
+            return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("key", key));
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to upload file: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Start a direct upload: responds with a short-lived URL the client PUTs the file to, so the bytes
+     * go to storage without passing through this application. Content that is already stored is
+     * reported as a duplicate, without a URL.
+     */
+    @PostMapping("/upload/presigned")
+    @ResponseBody
+    public ResponseEntity<?> createPresignedUpload(@RequestParam String filename,
+                                                   @RequestParam(defaultValue = MediaType.APPLICATION_OCTET_STREAM_VALUE) String contentType,
+                                                   @RequestParam long size,
+                                                   @RequestParam(required = false) String sha256) {
+        try {
+            Optional<PresignedUpload> upload = storageService.createPresignedUpload(filename, contentType, size, sha256);
+            if (upload.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).body(Map.of("error", "Direct uploads are not enabled"));
+            }
+            return ResponseEntity.ok(upload.get());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Called by the client once its direct upload has finished, to record the object and queue its thumbnails
+     */
+    @PostMapping("/upload/presigned/complete")
+    @ResponseBody
+    public ResponseEntity<Map<String, String>> completePresignedUpload(@RequestParam String key) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("key", storageService.completePresignedUpload(key)));
+        } catch (UnsupportedOperationException e) {
+            return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).body(Map.of("error", e.getMessage()));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to complete upload: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Upload many files at once, from a multi-file form or zip archives among the files. Responds
+     * with the outcome of every file.
+     */
+    @PostMapping("/upload/bulk")
+    @ResponseBody
+    public ResponseEntity<List<UploadResult>> uploadObjects(@RequestParam("files") List<MultipartFile> files) {
+        return ResponseEntity.ok(bulkUploadService.uploadFiles(files));
+    }
+
+    /**
+     * Upload every file in a zip archive sent as the raw request body, bypassing the multipart size limits
+     */
+    @PutMapping(value = "/upload/bulk", consumes = "application/zip")
+    @ResponseBody
+    public ResponseEntity<List<UploadResult>> uploadZip(HttpServletRequest request) {
+        try {
+            return ResponseEntity.ok(bulkUploadService.uploadZip(request.getInputStream()));
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body(List.of(UploadResult.failed(null, "Failed to read archive: " + e.getMessage())));
+        }
+    }
+
     @GetMapping("/view-page/{key}")
     public String viewObjectPage(@PathVariable String key, Model model, RedirectAttributes redirectAttributes) {
         try {
-            // Find the object in the list of objects
-            Optional<S3StorageItem> foundObject = storageService.listObjects().stream()
-                    .filter(obj -> obj.getKey().equals(key))
-                    .findFirst();
+            // Look up the object directly instead of listing the whole storage
+            Optional<S3StorageItem> foundObject = storageService.getObjectInfo(key);
             
             if (foundObject.isPresent()) {
                 model.addAttribute("object", foundObject.get());
@@ -76,22 +194,155 @@ public class S3Controller {
     }
 
     @GetMapping("/view/{key}")
-    public ResponseEntity<InputStreamResource> viewObject(@PathVariable String key) {
+    public ResponseEntity<StreamingResponseBody> viewObject(@PathVariable String key,
+                                                            @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
+                                                            WebRequest webRequest,
+                                                            HttpServletRequest request) {
         try {
-            InputStream inputStream = storageService.getObject(key);
-            
+            // Send the client to storage for the bytes when it can serve them directly; ranges and
+            // conditional requests are then answered there too
+            Optional<URI> presignedUrl = storageService.getPresignedDownloadUrl(key);
+            if (presignedUrl.isPresent()) {
+                return ResponseEntity.status(HttpStatus.FOUND).location(presignedUrl.get()).build();
+            }
+
+            Optional<S3StorageItem> foundObject = storageService.getObjectInfo(key);
+            if (foundObject.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            S3StorageItem object = foundObject.get();
+
+            // Answer conditional requests with 304 before touching the object body
+            long lastModified = object.getLastModified() != null ? object.getLastModified().toEpochMilli() : -1;
+            if (webRequest.checkNotModified(object.getETag(), lastModified)) {
+                return null;
+            }
+
             HttpHeaders headers = new HttpHeaders();
-            // Use a generic content type if we don't know the exact type
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            
-            return ResponseEntity.ok()
+            headers.setContentType(resolveContentType(object));
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+            if (object.getETag() != null) {
+                headers.setETag(object.getETag());
+            }
+            if (lastModified >= 0) {
+                headers.setLastModified(lastModified);
+            }
+
+            long totalLength = object.getSize();
+            long start = 0;
+            long end = totalLength - 1;
+            HttpStatus status = HttpStatus.OK;
+
+            // Serve a single byte range; multi-range requests fall back to the full body
+            if (rangeHeader != null && totalLength > 0) {
+                List<HttpRange> ranges;
+                try {
+                    ranges = HttpRange.parseRanges(rangeHeader);
+                    if (ranges.size() == 1) {
+                        start = ranges.get(0).getRangeStart(totalLength);
+                        end = ranges.get(0).getRangeEnd(totalLength);
+                        status = HttpStatus.PARTIAL_CONTENT;
+                        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + totalLength);
+                    }
+                } catch (IllegalArgumentException e) {
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header(HttpHeaders.CONTENT_RANGE, "bytes */" + totalLength)
+                            .build();
+                }
+            }
+
+            long length = end - start + 1;
+            headers.setContentLength(length);
+
+            Optional<Path> localFile = storageService.getLocalFile(key);
+            if (localFile.isPresent()) {
+                return serveLocalFile(localFile.get(), start, length, status, headers, request);
+            }
+
+            InputStream inputStream = status == HttpStatus.PARTIAL_CONTENT
+                    ? storageService.getObject(key, start, length)
+                    : storageService.getObject(key);
+            StreamingResponseBody body = outputStream -> {
+                try (inputStream) {
+                    StreamUtils.copyRange(inputStream, outputStream, 0, length - 1);
+                }
+            };
+
+            return ResponseEntity.status(status)
                     .headers(headers)
-                    .body(new InputStreamResource(inputStream));
+                    .body(body);
         } catch (IOException e) {
             return ResponseEntity.notFound().build();
         }
     }
 
+    /**
+     * Serve a file from local storage without copying it through heap buffers. When the container
+     * supports sendfile, the file region is handed to Tomcat and written kernel-to-socket after the
+     * handler returns; otherwise the region is transferred from a file channel.
+     */
+    private ResponseEntity<StreamingResponseBody> serveLocalFile(Path file, long start, long length, HttpStatus status,
+                                                                 HttpHeaders headers, HttpServletRequest request) {
+        if (HttpMethod.GET.matches(request.getMethod()) && length > 0
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, start + length);
+            return ResponseEntity.status(status)
+                    .headers(headers)
+                    .build();
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(outputStream);
+                long position = start;
+                long remaining = length;
+                while (remaining > 0) {
+                    long transferred = channel.transferTo(position, remaining, target);
+                    if (transferred <= 0) {
+                        break;
+                    }
+                    position += transferred;
+                    remaining -= transferred;
+                }
+            }
+        };
+
+        return ResponseEntity.status(status)
+                .headers(headers)
+                .body(body);
+    }
+
+    private MediaType resolveContentType(S3StorageItem object) {
+        if (object.getContentType() != null) {
+            try {
+                return MediaType.parseMediaType(object.getContentType());
+            } catch (InvalidMediaTypeException e) {
+                // Fall through to a guess based on the file name
+            }
+        }
+        // Use a generic content type if we don't know the exact type
+        return MediaTypeFactory.getMediaType(object.getName()).orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+    @PostMapping("/delete")
+    public String deleteObjects(@RequestParam(value = "keys", required = false) List<String> keys,
+                                RedirectAttributes redirectAttributes) {
+        if (keys == null || keys.isEmpty()) {
+            redirectAttributes.addFlashAttribute("error", "Please select files to delete");
+            return "redirect:/s3";
+        }
+
+        try {
+            storageService.deleteObjects(keys);
+            redirectAttributes.addFlashAttribute("success", keys.size() + " file(s) deleted successfully");
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", "Failed to delete files: " + e.getMessage());
+        }
+        return "redirect:/s3";
+    }
+
     @PostMapping("/delete/{key}")
     public String deleteObject(@PathVariable String key, RedirectAttributes redirectAttributes) {
         try {
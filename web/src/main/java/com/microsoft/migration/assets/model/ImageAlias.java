@@ -0,0 +1,39 @@
+package com.microsoft.migration.assets.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * An upload whose content was already stored. It is listed under its own key and filename, but its
+ * bytes and renditions are those of the entry it refers to, which are kept while any alias remains.
+ */
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_image_alias_s3_key", columnList = "s3Key", unique = true)
+})
+@Data
+@EqualsAndHashCode(callSuper = false)
+@NoArgsConstructor
+public class ImageAlias extends AssignedIdEntity {
+    @Id
+    private String id;
+    private String s3Key;
+    private String filename;
+    private String contentType;
+
+    // The entry that stores the shared content
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "image_metadata_id")
+    private ImageMetadata image;
+
+    private LocalDateTime uploadedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        uploadedAt = LocalDateTime.now();
+    }
+}
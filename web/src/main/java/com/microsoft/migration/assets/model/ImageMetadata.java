@@ -2,14 +2,22 @@ package com.microsoft.migration.assets.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_image_metadata_s3_key", columnList = "s3Key"),
+        @Index(name = "idx_image_metadata_content_hash", columnList = "contentHash", unique = true)
+})
 @Data
+@EqualsAndHashCode(callSuper = false)
 @NoArgsConstructor
-public class ImageMetadata {
+public class ImageMetadata extends AssignedIdEntity {
     @Id
     private String id;
     private String filename;
@@ -19,6 +27,23 @@ public class ImageMetadata {
     private String s3Url;
     private String thumbnailKey;
     private String thumbnailUrl;
+
+    // Hex SHA-256 of the original's bytes, used to deduplicate uploads of the same content
+    @Column(length = 64)
+    private String contentHash;
+
+    // Set when this entry was deleted while aliases still share its content; it is no longer listed,
+    // and the content is deleted along with the last alias
+    private Boolean entryDeleted;
+
+    @Enumerated(EnumType.STRING)
+    private ProcessingStatus processingStatus;
+
+    // Rendition name (e.g. "grid", "thumbnail", "lightbox") to storage key
+    @Convert(converter = RenditionKeysConverter.class)
+    @Column(columnDefinition = "text")
+    private Map<String, String> renditions = new LinkedHashMap<>();
+
     private LocalDateTime uploadedAt;
     private LocalDateTime lastModified;
 
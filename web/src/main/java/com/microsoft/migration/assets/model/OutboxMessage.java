@@ -0,0 +1,47 @@
+package com.microsoft.migration.assets.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A thumbnail job waiting to be published, written in the same transaction as the upload's metadata
+ */
+@Entity
+@Table(name = "image_processing_outbox", indexes = @Index(name = "idx_outbox_created_at", columnList = "createdAt"))
+@Data
+@EqualsAndHashCode(callSuper = false)
+@NoArgsConstructor
+public class OutboxMessage extends AssignedIdEntity {
+    @Id
+    private String id;
+    private String objectKey;
+    private String contentType;
+    private String storageType;
+    private long size;
+    private LocalDateTime createdAt;
+
+    // Set while a relay publishes the job; other relays skip it until then
+    private LocalDateTime claimedUntil;
+
+    public OutboxMessage(ImageProcessingMessage message) {
+        this.id = UUID.randomUUID().toString();
+        this.objectKey = message.getKey();
+        this.contentType = message.getContentType();
+        this.storageType = message.getStorageType();
+        this.size = message.getSize();
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    public ImageProcessingMessage toMessage() {
+        return new ImageProcessingMessage(objectKey, contentType, storageType, size);
+    }
+}
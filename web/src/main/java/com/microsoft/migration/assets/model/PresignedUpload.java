@@ -0,0 +1,22 @@
+package com.microsoft.migration.assets.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * A short-lived URL the client uploads an object to directly, with the headers it must send along.
+ * A duplicate's content is already stored, and it has been recorded under the key as an alias of that
+ * content; it has no URL and needs no upload.
+ */
+@Data
+@AllArgsConstructor
+public class PresignedUpload {
+    private String key;
+    private String url;
+    private Map<String, String> headers;
+    private Instant expiresAt;
+    private boolean duplicate;
+}
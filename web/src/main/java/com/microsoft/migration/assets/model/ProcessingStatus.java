@@ -0,0 +1,10 @@
+package com.microsoft.migration.assets.model;
+
+/**
+ * Thumbnail processing state of an original, used by the worker to skip redelivered jobs
+ */
+public enum ProcessingStatus {
+    PENDING,
+    COMPLETED,
+    FAILED
+}
@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.Instant;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
@@ -16,4 +17,10 @@ public class S3StorageItem {
     private Instant lastModified;
     private Instant uploadedAt;
     private String url;
-}
\ No newline at end of file
+    private String contentType;
+    private String eTag;
+    // Smaller renditions written by the worker; the thumbnail is null until it has been generated
+    private String thumbnailUrl;
+    private Map<String, String> renditionUrls;
+    private ProcessingStatus processingStatus;
+}
@@ -0,0 +1,20 @@
+package com.microsoft.migration.assets.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * An object written to storage whose metadata and processing message have not been recorded yet.
+ * A duplicate has content that is already stored under another key; recording it adds an alias under
+ * its own key that shares the stored content.
+ */
+@Data
+@AllArgsConstructor
+public class StoredObject {
+    private String key;
+    private String filename;
+    private String contentType;
+    private long size;
+    private String contentHash;
+    private boolean duplicate;
+}
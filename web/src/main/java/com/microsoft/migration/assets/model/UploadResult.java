@@ -0,0 +1,26 @@
+package com.microsoft.migration.assets.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Outcome of one file in a bulk upload
+ */
+@Data
+@AllArgsConstructor
+public class UploadResult {
+    public enum Status {
+        STORED,
+        DUPLICATE,
+        FAILED
+    }
+
+    private String filename;
+    private String key;
+    private Status status;
+    private String error;
+
+    public static UploadResult failed(String filename, String error) {
+        return new UploadResult(filename, null, Status.FAILED, error);
+    }
+}
@@ -0,0 +1,48 @@
+package com.microsoft.migration.assets.repository;
+
+import com.microsoft.migration.assets.model.ImageAlias;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+@Repository
+public interface ImageAliasRepository extends JpaRepository<ImageAlias, String> {
+
+    /**
+     * Find the alias listed under a key, along with the entry that stores its content
+     */
+    @EntityGraph(attributePaths = "image")
+    Optional<ImageAlias> findByS3Key(String s3Key);
+
+    /**
+     * Fetch the aliases listed under a batch of keys in a single query
+     */
+    @EntityGraph(attributePaths = "image")
+    List<ImageAlias> findAllByS3KeyIn(Collection<String> s3Keys);
+
+    /**
+     * Aliases listed after one key, up to and including another, in key order
+     */
+    @EntityGraph(attributePaths = "image")
+    List<ImageAlias> findAllByS3KeyGreaterThanAndS3KeyLessThanEqualOrderByS3Key(String after, String upTo, Limit limit);
+
+    /**
+     * Aliases listed after a key, in key order
+     */
+    @EntityGraph(attributePaths = "image")
+    List<ImageAlias> findAllByS3KeyGreaterThanOrderByS3Key(String after, Limit limit);
+
+    /**
+     * The keys of the given stored entries that aliases still refer to
+     */
+    @Query("select distinct a.image.s3Key from ImageAlias a where a.image.s3Key in :s3Keys")
+    Set<String> findReferencedS3Keys(@Param("s3Keys") Collection<String> s3Keys);
+}
@@ -1,10 +1,68 @@
 package com.microsoft.migration.assets.repository;
 
 import com.microsoft.migration.assets.model.ImageMetadata;
+import jakarta.persistence.criteria.Predicate;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface ImageMetadataRepository extends JpaRepository<ImageMetadata, String> {
+public interface ImageMetadataRepository extends JpaRepository<ImageMetadata, String>, JpaSpecificationExecutor<ImageMetadata> {
     // Basic CRUD operations are automatically provided by JpaRepository
-}
\ No newline at end of file
+
+    /**
+     * Find the metadata for a single object key
+     */
+    Optional<ImageMetadata> findByS3Key(String s3Key);
+
+    /**
+     * Fetch the metadata for a batch of object keys in a single query
+     */
+    List<ImageMetadata> findAllByS3KeyIn(Collection<String> s3Keys);
+
+    /**
+     * Fetch the metadata of every object whose key starts with one of the given prefixes, in a single query
+     */
+    default List<ImageMetadata> findAllByS3KeyStartingWithAny(Collection<String> prefixes) {
+        if (prefixes.isEmpty()) {
+            return List.of();
+        }
+        return findAll((root, query, builder) -> builder.or(prefixes.stream()
+                .map(prefix -> builder.like(root.get("s3Key"), prefix + "%"))
+                .toArray(Predicate[]::new)));
+    }
+
+    /**
+     * Find the entry that already stores content with the given SHA-256 hash
+     */
+    Optional<ImageMetadata> findByContentHash(String contentHash);
+
+    /**
+     * Fetch the entries that already store content with any of the given hashes, in a single query
+     */
+    List<ImageMetadata> findAllByContentHashIn(Collection<String> contentHashes);
+
+    /**
+     * Mark entries as deleted while their content is kept for the aliases that share it
+     */
+    @Modifying
+    @Transactional
+    @Query("update ImageMetadata m set m.entryDeleted = true where m.s3Key in :s3Keys")
+    int markEntryDeleted(@Param("s3Keys") Collection<String> s3Keys);
+
+    /**
+     * Delete the metadata for a batch of object keys in a single statement, without loading the rows
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from ImageMetadata m where m.s3Key in :s3Keys")
+    int deleteAllByS3KeyIn(@Param("s3Keys") Collection<String> s3Keys);
+}
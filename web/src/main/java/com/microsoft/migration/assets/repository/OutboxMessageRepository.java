@@ -0,0 +1,39 @@
+package com.microsoft.migration.assets.repository;
+
+import com.microsoft.migration.assets.model.OutboxMessage;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, String> {
+
+    /**
+     * Lock the oldest messages no relay holds a claim on, up to the page size, until the current transaction
+     * ends. Rows locked by another transaction are skipped (SELECT ... FOR UPDATE SKIP LOCKED).
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select m from OutboxMessage m where m.claimedUntil is null or m.claimedUntil < :now order by m.createdAt")
+    List<OutboxMessage> findUnclaimed(@Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * Give up the claim on messages that were not confirmed, so the next poll retries them
+     */
+    @Modifying
+    @Transactional
+    @Query("update OutboxMessage m set m.claimedUntil = null where m.id in :ids")
+    int releaseClaims(@Param("ids") Collection<String> ids);
+}
@@ -1,56 +1,192 @@
 package com.microsoft.migration.assets.service;
 
+import com.microsoft.migration.assets.model.ImageAlias;
 import com.microsoft.migration.assets.model.ImageMetadata;
 import com.microsoft.migration.assets.model.ImageProcessingMessage;
+import com.microsoft.migration.assets.model.PresignedUpload;
+import com.microsoft.migration.assets.model.ProcessingStatus;
 import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
+import com.microsoft.migration.assets.model.StoredObject;
+import com.microsoft.migration.assets.repository.ImageAliasRepository;
 import com.microsoft.migration.assets.repository.ImageMetadataRepository;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import static com.microsoft.migration.assets.config.RabbitConfig.QUEUE_NAME;
-
+@Slf4j
 @Service
 @RequiredArgsConstructor
 @Profile("!dev") // Active when not in dev profile
 public class AwsS3Service implements StorageService {
 
+    // Maximum number of keys S3 accepts in a single DeleteObjects request
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    // Keys handed out for direct uploads: a random UUID, a dash and the original filename
+    private static final Pattern UPLOAD_KEY = Pattern.compile("[0-9a-f]{8}(-[0-9a-f]{4}){3}-[0-9a-f]{12}-(.+)");
+
+    // Headers the browser sets itself and refuses to take from scripts
+    private static final Set<String> BROWSER_HEADERS = Set.of("host", "content-length");
+
     private final S3Client s3Client;
-    private final RabbitTemplate rabbitTemplate;
+    private final S3Presigner s3Presigner;
+    private final ObjectProvider<S3AsyncClient> s3AsyncClient;
+    private final OutboxService outboxService;
     private final ImageMetadataRepository imageMetadataRepository;
+    private final ImageAliasRepository imageAliasRepository;
+
+    // Part uploads are blocking I/O, so each one runs on its own virtual thread
+    private final ExecutorService uploadExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     @Value("${aws.s3.bucket}")
     private String bucketName;
 
+    @Value("${aws.s3.multipart.part-size:8MB}")
+    private DataSize partSize;
+
+    @Value("${aws.s3.multipart.max-concurrency:4}")
+    private int multipartMaxConcurrency;
+
+    @Value("${aws.s3.presigned.enabled:false}")
+    private boolean presignedEnabled;
+
+    @Value("${aws.s3.presigned.upload-expiry:15m}")
+    private Duration presignedUploadExpiry;
+
+    @Value("${aws.s3.presigned.download-expiry:5m}")
+    private Duration presignedDownloadExpiry;
+
+    // A single PUT is limited to 5GB by S3
+    @Value("${aws.s3.presigned.max-upload-size:5GB}")
+    private DataSize presignedMaxUploadSize;
+
     @Override
-    public List<S3StorageItem> listObjects() {
-        ListObjectsV2Request request = ListObjectsV2Request.builder()
-                .bucket(bucketName)
-                .build();
+    public S3StoragePage listObjects(int pageSize, String continuationToken) {
+        // Renditions share the bucket with their originals but are not listed, so keep reading until the
+        // page is full. Aliases have no object of their own and are merged in by key from the database.
+        // The token is the last key shown, which the next page starts after.
+        List<S3StorageItem> items = new ArrayList<>(pageSize);
+        String startAfter = continuationToken;
+        boolean truncated = true;
+        while (items.size() < pageSize && truncated) {
+            ListObjectsV2Request request = ListObjectsV2Request.builder()
+                    .bucket(bucketName)
+                    .maxKeys(pageSize)
+                    .startAfter(startAfter)
+                    .build();
+
+            ListObjectsV2Response response = s3Client.listObjectsV2(request);
+            truncated = Boolean.TRUE.equals(response.isTruncated()) && !response.contents().isEmpty();
+            String lastListedKey = response.contents().isEmpty()
+                    ? null
+                    : response.contents().get(response.contents().size() - 1).key();
 
-        ListObjectsV2Response response = s3Client.listObjectsV2(request);
+            // One alias more than the page can take shows whether the page fills up part way
+            int remaining = pageSize - items.size();
+            List<S3StorageItem> listed = new ArrayList<>(toStorageItems(response.contents()));
+            findAliases(startAfter, truncated ? lastListedKey : null, remaining + 1).stream()
+                    .map(alias -> toStorageItem(alias, alias.getImage().getSize(), null))
+                    .forEach(listed::add);
+            listed.sort(Comparator.comparing(S3StorageItem::getKey));
+
+            int taken = Math.min(listed.size(), remaining);
+            items.addAll(listed.subList(0, taken));
+            if (taken < listed.size()) {
+                // The page filled up part way through this response
+                return new S3StoragePage(items, items.get(items.size() - 1).getKey());
+            }
+            startAfter = lastListedKey;
+        }
+        return new S3StoragePage(items, truncated ? startAfter : null);
+    }
+
+    /**
+     * Aliases listed after one key up to and including another, or to the end when there is no upper key
+     */
+    private List<ImageAlias> findAliases(String after, String upTo, int limit) {
+        String lowerKey = after != null ? after : "";
+        return upTo != null
+                ? imageAliasRepository.findAllByS3KeyGreaterThanAndS3KeyLessThanEqualOrderByS3Key(lowerKey, upTo, Limit.of(limit))
+                : imageAliasRepository.findAllByS3KeyGreaterThanOrderByS3Key(lowerKey, Limit.of(limit));
+    }
 
-        return response.contents().stream()
+    private List<S3StorageItem> toStorageItems(List<S3Object> s3Objects) {
+        // Fetch metadata for all listed keys in one query instead of scanning the table per object
+        List<String> keys = s3Objects.stream()
+                .map(S3Object::key)
+                .collect(Collectors.toList());
+        Map<String, ImageMetadata> metadataByKey = keys.isEmpty()
+                ? Map.of()
+                : imageMetadataRepository.findAllByS3KeyIn(keys).stream()
+                        .collect(Collectors.toMap(ImageMetadata::getS3Key, Function.identity(), (first, second) -> first));
+
+        // Renditions have no metadata of their own; they are recorded on their originals
+        Set<String> renditionKeys = findRecordedRenditions(keys.stream()
+                .filter(key -> !metadataByKey.containsKey(key))
+                .toList());
+
+        // Entries deleted while aliases share their content keep their object, but are not listed
+        return s3Objects.stream()
+                .filter(s3Object -> !renditionKeys.contains(s3Object.key()))
+                .filter(s3Object -> !isEntryDeleted(metadataByKey.get(s3Object.key())))
                 .map(s3Object -> {
-                    // Try to get metadata for upload time
-                    Instant uploadedAt = imageMetadataRepository.findAll().stream()
-                            .filter(metadata -> metadata.getS3Key().equals(s3Object.key()))
-                            .map(metadata -> metadata.getUploadedAt().atZone(java.time.ZoneId.systemDefault()).toInstant())
-                            .findFirst()
-                            .orElse(s3Object.lastModified()); // fallback to lastModified if metadata not found
+                    // Use metadata for upload time, fall back to lastModified if metadata not found
+                    ImageMetadata metadata = metadataByKey.get(s3Object.key());
+                    Instant uploadedAt = metadata != null && metadata.getUploadedAt() != null
+                            ? metadata.getUploadedAt().atZone(java.time.ZoneId.systemDefault()).toInstant()
+                            : s3Object.lastModified();
 
                     return new S3StorageItem(
                             s3Object.key(),
@@ -58,43 +194,610 @@ public class AwsS3Service implements StorageService {
                             s3Object.size(),
                             s3Object.lastModified(),
                             uploadedAt,
-                            generateUrl(s3Object.key())
+                            viewUrl(s3Object.key()),
+                            null,
+                            s3Object.eTag(),
+                            getThumbnailUrl(metadata),
+                            getRenditionUrls(metadata),
+                            getProcessingStatus(metadata)
                     );
                 })
                 .collect(Collectors.toList());
     }
 
     @Override
-    public void uploadObject(MultipartFile file) throws IOException {
-        String key = generateKey(file.getOriginalFilename());
-        
-        PutObjectRequest request = PutObjectRequest.builder()
+    public Optional<S3StorageItem> getObjectInfo(String key) throws IOException {
+        HeadObjectRequest request = HeadObjectRequest.builder()
                 .bucket(bucketName)
                 .key(key)
-                .contentType(file.getContentType())
                 .build();
-        
-        s3Client.putObject(request, RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
 
-        // Send message to queue for thumbnail generation
-        ImageProcessingMessage message = new ImageProcessingMessage(
-            key,
-            file.getContentType(),
-            getStorageType(),
-            file.getSize()
+        HeadObjectResponse response;
+        try {
+            response = s3Client.headObject(request);
+        } catch (NoSuchKeyException e) {
+            return getAliasInfo(key);
+        }
+
+        ImageMetadata metadata = imageMetadataRepository.findByS3Key(key).orElse(null);
+        if (isEntryDeleted(metadata)) {
+            return Optional.empty();
+        }
+        Instant uploadedAt = metadata != null && metadata.getUploadedAt() != null
+                ? metadata.getUploadedAt().atZone(java.time.ZoneId.systemDefault()).toInstant()
+                : response.lastModified();
+
+        return Optional.of(new S3StorageItem(
+                key,
+                extractFilename(key),
+                response.contentLength(),
+                response.lastModified(),
+                uploadedAt,
+                viewUrl(key),
+                response.contentType(),
+                response.eTag(),
+                getThumbnailUrl(metadata),
+                getRenditionUrls(metadata),
+                getProcessingStatus(metadata)
+        ));
+    }
+
+    /**
+     * The details of an alias, whose content is stored under the key of the entry it refers to
+     */
+    private Optional<S3StorageItem> getAliasInfo(String key) {
+        Optional<ImageAlias> alias = imageAliasRepository.findByS3Key(key);
+        if (alias.isEmpty()) {
+            return Optional.empty();
+        }
+        HeadObjectResponse response;
+        try {
+            response = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(alias.get().getImage().getS3Key())
+                    .build());
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        }
+        return Optional.of(toStorageItem(alias.get(), response.contentLength(), response.eTag()));
+    }
+
+    private S3StorageItem toStorageItem(ImageAlias alias, Long size, String eTag) {
+        ImageMetadata metadata = alias.getImage();
+        Instant uploadedAt = alias.getUploadedAt() != null
+                ? alias.getUploadedAt().atZone(java.time.ZoneId.systemDefault()).toInstant()
+                : null;
+        return new S3StorageItem(
+                alias.getS3Key(),
+                extractFilename(alias.getS3Key()),
+                size != null ? size : -1,
+                uploadedAt,
+                uploadedAt,
+                viewUrl(metadata.getS3Key()),
+                alias.getContentType(),
+                eTag,
+                getThumbnailUrl(metadata),
+                getRenditionUrls(metadata),
+                getProcessingStatus(metadata)
         );
-        rabbitTemplate.convertAndSend(QUEUE_NAME, message);
+    }
+
+    private static boolean isEntryDeleted(ImageMetadata metadata) {
+        return metadata != null && Boolean.TRUE.equals(metadata.getEntryDeleted());
+    }
+
+    /**
+     * The given keys that are recorded as renditions of an original. A rendition key starts with the
+     * upload prefix of its original, so the originals are found by those prefixes in one query.
+     */
+    private Set<String> findRecordedRenditions(Collection<String> keys) {
+        Set<String> prefixes = new HashSet<>();
+        for (String key : keys) {
+            Matcher matcher = UPLOAD_KEY.matcher(key);
+            if (matcher.matches()) {
+                prefixes.add(key.substring(0, matcher.start(2)));
+            }
+        }
+        Set<String> renditionKeys = new HashSet<>();
+        for (ImageMetadata metadata : imageMetadataRepository.findAllByS3KeyStartingWithAny(prefixes)) {
+            renditionKeys.addAll(recordedRenditionKeys(metadata));
+        }
+        renditionKeys.retainAll(keys);
+        return renditionKeys;
+    }
+
+    private static Set<String> recordedRenditionKeys(ImageMetadata metadata) {
+        Set<String> renditionKeys = new LinkedHashSet<>(metadata.getRenditions().values());
+        if (metadata.getThumbnailKey() != null) {
+            renditionKeys.add(metadata.getThumbnailKey());
+        }
+        return renditionKeys;
+    }
+
+    @Override
+    public Set<String> getRenditionKeys(Collection<String> keys) {
+        // Recorded by the worker, plus the legacy thumbnail key of objects processed before renditions were recorded
+        Set<String> renditionKeys = new LinkedHashSet<>();
+        keys.forEach(key -> renditionKeys.add(getThumbnailKey(key)));
+        if (!keys.isEmpty()) {
+            imageMetadataRepository.findAllByS3KeyIn(keys)
+                    .forEach(metadata -> renditionKeys.addAll(recordedRenditionKeys(metadata)));
+        }
+        return renditionKeys;
+    }
 
-        // Create and save metadata to database
+    private String getThumbnailUrl(ImageMetadata metadata) {
+        if (metadata == null || metadata.getThumbnailKey() == null) {
+            return null;
+        }
+        return viewUrl(metadata.getThumbnailKey());
+    }
+
+    private Map<String, String> getRenditionUrls(ImageMetadata metadata) {
+        if (metadata == null || metadata.getRenditions() == null) {
+            return Map.of();
+        }
+        Map<String, String> renditionUrls = new LinkedHashMap<>();
+        metadata.getRenditions().forEach((name, renditionKey) -> renditionUrls.put(name, viewUrl(renditionKey)));
+        return renditionUrls;
+    }
+
+    private ProcessingStatus getProcessingStatus(ImageMetadata metadata) {
+        // Objects stored outside this application have no metadata and are never processed
+        if (metadata == null) {
+            return null;
+        }
+        // Objects stored before processing was tracked have no status
+        if (metadata.getProcessingStatus() == null) {
+            return metadata.getThumbnailKey() != null ? ProcessingStatus.COMPLETED : ProcessingStatus.PENDING;
+        }
+        return metadata.getProcessingStatus();
+    }
+
+    @Override
+    public StoredObject storeObject(String filename, String contentType, InputStream inputStream, long size) throws IOException {
+        // The content is hashed as it streams through, so duplicates are detected without a second read
+        MessageDigest digest = newContentDigest();
+        long partSizeBytes = partSize.toBytes();
+
+        byte[] firstPart = inputStream.readNBytes((int) partSizeBytes);
+        digest.update(firstPart);
+
+        if ((size >= 0 && size <= partSizeBytes) || firstPart.length < partSizeBytes) {
+            // Small enough for a single request, and the whole content is already hashed
+            String contentHash = HexFormat.of().formatHex(digest.digest());
+            Optional<ImageMetadata> existing = imageMetadataRepository.findByContentHash(contentHash);
+            if (existing.isPresent()) {
+                return useExisting(existing.get(), filename, contentType);
+            }
+
+            String key = generateKey(filename);
+            PutObjectRequest request = PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .contentType(contentType)
+                    .build();
+            s3Client.putObject(request, RequestBody.fromBytes(firstPart));
+            return new StoredObject(key, filename, contentType, firstPart.length, contentHash, false);
+        }
+
+        String key = generateKey(filename);
+        MultipartUpload upload = multipartUpload(key, contentType, firstPart, inputStream, partSizeBytes, digest);
+
+        // The hash is only known once the last part has been read; abort rather than complete a duplicate
+        String contentHash = HexFormat.of().formatHex(digest.digest());
+        Optional<ImageMetadata> existing = imageMetadataRepository.findByContentHash(contentHash);
+        if (existing.isPresent()) {
+            abortMultipartUpload(key, upload.uploadId());
+            return useExisting(existing.get(), filename, contentType);
+        }
+
+        CompleteMultipartUploadRequest completeRequest = CompleteMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(upload.uploadId())
+                .multipartUpload(CompletedMultipartUpload.builder().parts(upload.parts()).build())
+                .build();
+        try {
+            s3Client.completeMultipartUpload(completeRequest);
+        } catch (RuntimeException e) {
+            abortMultipartUpload(key, upload.uploadId());
+            throw new IOException("Multipart upload failed for " + key, e);
+        }
+        return new StoredObject(key, filename, contentType, upload.size(), contentHash, false);
+    }
+
+    @Override
+    public List<String> recordUploads(List<StoredObject> storedObjects) {
+        List<String> keys = new ArrayList<>(storedObjects.size());
+        List<StoredObject> newObjects = new ArrayList<>();
+        List<StoredObject> sharedObjects = new ArrayList<>();
+        Map<String, StoredObject> firstByHash = new HashMap<>();
+        for (StoredObject storedObject : storedObjects) {
+            keys.add(storedObject.getKey());
+            if (storedObject.isDuplicate()) {
+                sharedObjects.add(storedObject);
+                continue;
+            }
+
+            // The same content twice in one batch is stored once; direct uploads may come without a hash
+            StoredObject first = storedObject.getContentHash() != null
+                    ? firstByHash.putIfAbsent(storedObject.getContentHash(), storedObject)
+                    : null;
+            if (first != null) {
+                log.info("Upload of {} has the same content as {}, sharing the stored object", storedObject.getFilename(), first.getKey());
+                deleteStoredObject(storedObject.getKey());
+                storedObject.setDuplicate(true);
+                sharedObjects.add(storedObject);
+                continue;
+            }
+            newObjects.add(storedObject);
+        }
+
+        try {
+            List<ImageMetadata> metadata = newObjects.stream().map(this::toMetadata).toList();
+            outboxService.recordUploads(metadata,
+                    newObjects.stream().map(this::toMessage).toList(),
+                    toAliases(sharedObjects, metadata));
+        } catch (DataIntegrityViolationException e) {
+            // Some content was uploaded concurrently by another request; record one by one to resolve it
+            newObjects.forEach(this::recordUpload);
+            sharedObjects.forEach(this::recordAlias);
+        }
+        return keys;
+    }
+
+    /**
+     * Save the metadata for a newly stored object and its thumbnail job in one transaction; the outbox
+     * relay publishes the job once committed. If a concurrent upload of the same content saved its
+     * metadata first, the new object is removed and recorded as an alias of the existing one instead.
+     */
+    private void recordUpload(StoredObject storedObject) {
+        try {
+            outboxService.recordUpload(toMetadata(storedObject), toMessage(storedObject));
+        } catch (DataIntegrityViolationException e) {
+            Optional<ImageMetadata> existing = imageMetadataRepository.findByContentHash(storedObject.getContentHash());
+            if (existing.isEmpty()) {
+                throw e;
+            }
+            if (existing.get().getS3Key().equals(storedObject.getKey())) {
+                // Recorded by an earlier attempt, so recording again is a no-op
+                return;
+            }
+            log.info("Upload of {} has the same content as {}, sharing the stored object", storedObject.getFilename(), existing.get().getS3Key());
+            deleteStoredObject(storedObject.getKey());
+            storedObject.setDuplicate(true);
+            recordAlias(storedObject);
+        }
+    }
+
+    private void recordAlias(StoredObject storedObject) {
+        // Recorded by an earlier attempt, so recording again is a no-op
+        if (imageAliasRepository.findByS3Key(storedObject.getKey()).isPresent()) {
+            return;
+        }
+        imageAliasRepository.save(toAliases(List.of(storedObject), List.of()).get(0));
+    }
+
+    /**
+     * Aliases for uploads whose content is already stored, either by an entry recorded earlier or by
+     * one recorded along with them
+     */
+    private List<ImageAlias> toAliases(List<StoredObject> storedObjects, List<ImageMetadata> recordedWith) {
+        if (storedObjects.isEmpty()) {
+            return List.of();
+        }
+        Map<String, ImageMetadata> metadataByHash = new HashMap<>();
+        recordedWith.stream()
+                .filter(metadata -> metadata.getContentHash() != null)
+                .forEach(metadata -> metadataByHash.put(metadata.getContentHash(), metadata));
+        Set<String> missingHashes = storedObjects.stream()
+                .map(StoredObject::getContentHash)
+                .filter(contentHash -> !metadataByHash.containsKey(contentHash))
+                .collect(Collectors.toSet());
+        if (!missingHashes.isEmpty()) {
+            imageMetadataRepository.findAllByContentHashIn(missingHashes)
+                    .forEach(metadata -> metadataByHash.put(metadata.getContentHash(), metadata));
+        }
+
+        List<ImageAlias> aliases = new ArrayList<>(storedObjects.size());
+        for (StoredObject storedObject : storedObjects) {
+            ImageMetadata image = metadataByHash.get(storedObject.getContentHash());
+            if (image == null) {
+                // The entry holding the content was deleted since the upload was checked against it
+                throw new IllegalStateException("The stored content of " + storedObject.getFilename() + " no longer exists");
+            }
+            ImageAlias alias = new ImageAlias();
+            alias.setId(UUID.randomUUID().toString());
+            alias.setS3Key(storedObject.getKey());
+            alias.setFilename(storedObject.getFilename());
+            alias.setContentType(storedObject.getContentType());
+            alias.setImage(image);
+            aliases.add(alias);
+        }
+        return aliases;
+    }
+
+    private ImageMetadata toMetadata(StoredObject storedObject) {
         ImageMetadata metadata = new ImageMetadata();
         metadata.setId(UUID.randomUUID().toString());
-        metadata.setFilename(file.getOriginalFilename());
-        metadata.setContentType(file.getContentType());
-        metadata.setSize(file.getSize());
-        metadata.setS3Key(key);
-        metadata.setS3Url(generateUrl(key));
-        
-        imageMetadataRepository.save(metadata);
+        metadata.setFilename(storedObject.getFilename());
+        metadata.setContentType(storedObject.getContentType());
+        metadata.setSize(storedObject.getSize());
+        metadata.setS3Key(storedObject.getKey());
+        metadata.setS3Url(generateUrl(storedObject.getKey()));
+        metadata.setContentHash(storedObject.getContentHash());
+        metadata.setProcessingStatus(ProcessingStatus.PENDING);
+        return metadata;
+    }
+
+    private ImageProcessingMessage toMessage(StoredObject storedObject) {
+        // Message for thumbnail generation
+        return new ImageProcessingMessage(
+            storedObject.getKey(),
+            storedObject.getContentType(),
+            getStorageType(),
+            storedObject.getSize()
+        );
+    }
+
+    private void deleteStoredObject(String key) {
+        s3Client.deleteObject(DeleteObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build());
+    }
+
+    @Override
+    public CompletableFuture<StoredObject> storeObjectAsync(String filename, String contentType, InputStream inputStream, long size) {
+        S3AsyncClient asyncClient = s3AsyncClient.getIfAvailable();
+        if (asyncClient == null || size < 0 || size > partSize.toBytes()) {
+            // Large and unsized objects take the bounded multipart path, which can abort a duplicate once hashed
+            return StorageService.super.storeObjectAsync(filename, contentType, inputStream, size);
+        }
+
+        // Read, hash and check for a duplicate on a virtual thread, then hand the bytes to the
+        // non-blocking client so no thread waits on the upload
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return inputStream.readAllBytes();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, uploadExecutor).thenComposeAsync(content -> {
+            String contentHash = HexFormat.of().formatHex(newContentDigest().digest(content));
+            Optional<ImageMetadata> existing = imageMetadataRepository.findByContentHash(contentHash);
+            if (existing.isPresent()) {
+                return CompletableFuture.completedFuture(useExisting(existing.get(), filename, contentType));
+            }
+
+            String key = generateKey(filename);
+            PutObjectRequest request = PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .contentType(contentType)
+                    .build();
+            return asyncClient.putObject(request, AsyncRequestBody.fromBytes(content))
+                    .thenApply(response -> new StoredObject(key, filename, contentType, content.length, contentHash, false));
+        }, uploadExecutor);
+    }
+
+    /**
+     * Duplicate content gets a key of its own, recorded as an alias of the entry that already stores it,
+     * so no bytes are stored and no thumbnail job is queued
+     */
+    private StoredObject useExisting(ImageMetadata existing, String filename, String contentType) {
+        log.info("Upload of {} has the same content as {}, sharing the stored object", filename, existing.getS3Key());
+        long size = existing.getSize() != null ? existing.getSize() : -1;
+        return new StoredObject(generateKey(filename), filename, contentType, size, existing.getContentHash(), true);
+    }
+
+    private static MessageDigest newContentDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private record MultipartUpload(String uploadId, List<CompletedPart> parts, long size) {
+    }
+
+    /**
+     * Stream the input into an S3 multipart upload, feeding every part into the digest in order.
+     * At most maxConcurrency parts are buffered and uploaded in parallel, so the heap footprint is
+     * bounded regardless of the object size. The upload is left for the caller to complete, and is
+     * aborted here if any part fails.
+     */
+    private MultipartUpload multipartUpload(String key, String contentType, byte[] firstPart, InputStream inputStream,
+                                            long partSizeBytes, MessageDigest digest) throws IOException {
+        CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .build();
+        String uploadId = s3Client.createMultipartUpload(createRequest).uploadId();
+
+        Semaphore inFlightParts = new Semaphore(multipartMaxConcurrency);
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        long totalSize = 0;
+        try {
+            byte[] buffer = firstPart;
+            int partNumber = 1;
+            while (buffer.length > 0) {
+                inFlightParts.acquire();
+                CompletableFuture<CompletedPart> part = uploadPart(key, uploadId, partNumber++, buffer);
+                part.whenComplete((result, error) -> inFlightParts.release());
+                parts.add(part);
+                totalSize += buffer.length;
+
+                // Stop reading as soon as a part fails
+                if (parts.stream().anyMatch(CompletableFuture::isCompletedExceptionally)) {
+                    break;
+                }
+                buffer = inputStream.readNBytes((int) partSizeBytes);
+                digest.update(buffer);
+            }
+
+            List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completedParts.add(part.join());
+            }
+            return new MultipartUpload(uploadId, completedParts, totalSize);
+        } catch (Exception e) {
+            parts.forEach(part -> part.cancel(true));
+            abortMultipartUpload(key, uploadId);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (e instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Multipart upload failed for " + key, e);
+        }
+    }
+
+    private CompletableFuture<CompletedPart> uploadPart(String key, String uploadId, int partNumber, byte[] data) {
+        return CompletableFuture.supplyAsync(() -> {
+            UploadPartRequest request = UploadPartRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .contentLength((long) data.length)
+                    .build();
+            String eTag = s3Client.uploadPart(request, RequestBody.fromBytes(data)).eTag();
+            return CompletedPart.builder()
+                    .partNumber(partNumber)
+                    .eTag(eTag)
+                    .build();
+        }, uploadExecutor);
+    }
+
+    private void abortMultipartUpload(String key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (Exception e) {
+            log.warn("Failed to abort multipart upload {} for {}", uploadId, key, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadExecutor.shutdown();
+    }
+
+    @Override
+    public boolean isPresignedUploadEnabled() {
+        return presignedEnabled;
+    }
+
+    @Override
+    public Optional<PresignedUpload> createPresignedUpload(String filename, String contentType, long size, String sha256) {
+        if (!presignedEnabled) {
+            return Optional.empty();
+        }
+        if (size < 0 || size > presignedMaxUploadSize.toBytes()) {
+            throw new IllegalArgumentException("Direct uploads must state a size of at most " + presignedMaxUploadSize);
+        }
+
+        // With the hash known up front, content that is already stored needs no upload at all
+        String contentHash = null;
+        if (sha256 != null && !sha256.isEmpty()) {
+            contentHash = sha256.toLowerCase(Locale.ROOT);
+            if (contentHash.length() != 64) {
+                throw new IllegalArgumentException("Not a SHA-256 hash: " + sha256);
+            }
+            Optional<ImageMetadata> existing = imageMetadataRepository.findByContentHash(contentHash);
+            if (existing.isPresent()) {
+                String key = recordUploads(List.of(useExisting(existing.get(), filename, contentType))).get(0);
+                return Optional.of(new PresignedUpload(key, null, Map.of(), null, true));
+            }
+        }
+
+        // The size, type and checksum are signed, so S3 rejects an upload that does not match them
+        String key = generateKey(filename);
+        PutObjectRequest.Builder putRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .contentLength(size);
+        if (contentHash != null) {
+            putRequest.checksumSHA256(Base64.getEncoder().encodeToString(HexFormat.of().parseHex(contentHash)));
+        }
+        PresignedPutObjectRequest presigned = s3Presigner.presignPutObject(PutObjectPresignRequest.builder()
+                .signatureDuration(presignedUploadExpiry)
+                .putObjectRequest(putRequest.build())
+                .build());
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        presigned.signedHeaders().forEach((name, values) -> {
+            if (!BROWSER_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                headers.put(name, String.join(",", values));
+            }
+        });
+        return Optional.of(new PresignedUpload(key, presigned.url().toString(),
+                headers, presigned.expiration(), false));
+    }
+
+    @Override
+    public String completePresignedUpload(String key) throws IOException {
+        if (!presignedEnabled) {
+            throw new UnsupportedOperationException("Direct uploads are not enabled");
+        }
+        Matcher matcher = UPLOAD_KEY.matcher(key);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not an upload key: " + key);
+        }
+
+        // Completing twice, e.g. when the client retries, records the object once
+        if (imageMetadataRepository.findByS3Key(key).isPresent() || imageAliasRepository.findByS3Key(key).isPresent()) {
+            return key;
+        }
+
+        HeadObjectResponse response;
+        try {
+            response = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .checksumMode(ChecksumMode.ENABLED)
+                    .build());
+        } catch (NoSuchKeyException e) {
+            throw new FileNotFoundException("Upload not found: " + key);
+        }
+        if (response.contentLength() > presignedMaxUploadSize.toBytes()) {
+            deleteStoredObject(key);
+            throw new IOException("Upload exceeds the maximum size of " + presignedMaxUploadSize);
+        }
+
+        // S3 verified the checksum on upload, so it stands in for the hash we compute while streaming
+        String contentHash = response.checksumSHA256() != null
+                ? HexFormat.of().formatHex(Base64.getDecoder().decode(response.checksumSHA256()))
+                : null;
+        String contentType = response.contentType() != null ? response.contentType() : "application/octet-stream";
+        StoredObject storedObject = new StoredObject(key, matcher.group(2), contentType, response.contentLength(),
+                contentHash, false);
+        return recordUploads(List.of(storedObject)).get(0);
+    }
+
+    @Override
+    public Optional<URI> getPresignedDownloadUrl(String key) {
+        if (!presignedEnabled) {
+            return Optional.empty();
+        }
+        // An alias is downloaded from the object that stores its content
+        String objectKey = imageAliasRepository.findByS3Key(key)
+                .map(alias -> alias.getImage().getS3Key())
+                .orElse(key);
+        PresignedGetObjectRequest presigned = s3Presigner.presignGetObject(GetObjectPresignRequest.builder()
+                .signatureDuration(presignedDownloadExpiry)
+                .getObjectRequest(request -> request.bucket(bucketName).key(objectKey))
+                .build());
+        return Optional.of(URI.create(presigned.url().toString()));
     }
 
     @Override
@@ -104,35 +807,125 @@ public class AwsS3Service implements StorageService {
                 .key(key)
                 .build();
         
-        return s3Client.getObject(request);
+        try {
+            return s3Client.getObject(request);
+        } catch (NoSuchKeyException e) {
+            return getObject(aliasedKey(key, e), request.toBuilder());
+        }
     }
 
     @Override
-    public void deleteObject(String key) throws IOException {
-        // Delete both original and thumbnail if it exists
-        DeleteObjectRequest request = DeleteObjectRequest.builder()
+    public InputStream getObject(String key, long offset, long length) throws IOException {
+        GetObjectRequest request = GetObjectRequest.builder()
                 .bucket(bucketName)
                 .key(key)
+                .range("bytes=" + offset + "-" + (offset + length - 1))
                 .build();
-        
-        s3Client.deleteObject(request);
 
         try {
-            // Try to delete thumbnail if it exists
-            DeleteObjectRequest thumbnailRequest = DeleteObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(getThumbnailKey(key))
-                    .build();
-            s3Client.deleteObject(thumbnailRequest);
-        } catch (Exception e) {
-            // Ignore if thumbnail doesn't exist
+            return s3Client.getObject(request);
+        } catch (NoSuchKeyException e) {
+            return getObject(aliasedKey(key, e), request.toBuilder());
+        }
+    }
+
+    private InputStream getObject(String objectKey, GetObjectRequest.Builder request) {
+        return s3Client.getObject(request.key(objectKey).build());
+    }
+
+    /**
+     * The key of the object that stores an alias's content. Aliases are only looked up once the key is
+     * found to have no object, so reading any other object costs no query.
+     */
+    private String aliasedKey(String key, NoSuchKeyException notFound) {
+        return imageAliasRepository.findByS3Key(key)
+                .map(alias -> alias.getImage().getS3Key())
+                .orElseThrow(() -> notFound);
+    }
+
+    @Override
+    public void deleteObjects(Collection<String> keys) throws IOException {
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        // An alias only drops its own entry; the content it shares goes with the last entry referring to it
+        List<ImageAlias> aliases = imageAliasRepository.findAllByS3KeyIn(keys);
+        Set<String> aliasKeys = aliases.stream().map(ImageAlias::getS3Key).collect(Collectors.toSet());
+        if (!aliases.isEmpty()) {
+            imageAliasRepository.deleteAllInBatch(aliases);
+        }
+        List<String> entryKeys = keys.stream()
+                .filter(key -> !aliasKeys.contains(key))
+                .toList();
+        List<String> releasedKeys = aliases.stream()
+                .map(ImageAlias::getImage)
+                .filter(AwsS3Service::isEntryDeleted)
+                .map(ImageMetadata::getS3Key)
+                .distinct()
+                .toList();
+
+        Set<String> candidateKeys = new LinkedHashSet<>(entryKeys);
+        candidateKeys.addAll(releasedKeys);
+        Set<String> referencedKeys = candidateKeys.isEmpty()
+                ? Set.of()
+                : imageAliasRepository.findReferencedS3Keys(candidateKeys);
+        List<String> keptEntryKeys = entryKeys.stream()
+                .filter(referencedKeys::contains)
+                .toList();
+        if (!keptEntryKeys.isEmpty()) {
+            imageMetadataRepository.markEntryDeleted(keptEntryKeys);
+        }
+        List<String> contentKeys = candidateKeys.stream()
+                .filter(key -> !referencedKeys.contains(key))
+                .toList();
+        Set<String> failedKeys = deleteContent(contentKeys);
+
+        // Keep the metadata of originals that are still in the bucket
+        List<String> deletedKeys = contentKeys.stream()
+                .filter(key -> !failedKeys.contains(key))
+                .toList();
+        if (!deletedKeys.isEmpty()) {
+            imageMetadataRepository.deleteAllByS3KeyIn(deletedKeys);
         }
+        long failedEntries = entryKeys.stream().filter(failedKeys::contains).count();
+        log.info("Deleted {} of {} entries ({} aliases, {} kept for their aliases, {} stored objects)",
+                keys.size() - failedEntries, keys.size(), aliasKeys.size(), keptEntryKeys.size(), deletedKeys.size());
 
-        // Delete metadata from database
-        imageMetadataRepository.findAll().stream()
-                .filter(metadata -> metadata.getS3Key().equals(key))
-                .findFirst()
-                .ifPresent(metadata -> imageMetadataRepository.delete(metadata));
+        if (failedEntries > 0) {
+            throw new IOException("Failed to delete " + failedEntries + " of " + keys.size() + " objects");
+        }
+    }
+
+    /**
+     * Delete stored objects along with their legacy thumbnail keys and every rendition recorded for them.
+     * Returns the keys that could not be deleted.
+     */
+    private Set<String> deleteContent(Collection<String> keys) {
+        Set<String> failedKeys = new HashSet<>();
+        if (keys.isEmpty()) {
+            return failedKeys;
+        }
+        Set<String> objectKeys = new LinkedHashSet<>(keys);
+        objectKeys.addAll(getRenditionKeys(keys));
+
+        // DeleteObjects accepts up to 1000 keys per request; quiet mode only reports failures
+        List<String> allKeys = new ArrayList<>(objectKeys);
+        for (int from = 0; from < allKeys.size(); from += DELETE_BATCH_SIZE) {
+            List<ObjectIdentifier> identifiers = allKeys.subList(from, Math.min(from + DELETE_BATCH_SIZE, allKeys.size()))
+                    .stream()
+                    .map(key -> ObjectIdentifier.builder().key(key).build())
+                    .toList();
+            DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(bucketName)
+                    .delete(Delete.builder().objects(identifiers).quiet(true).build())
+                    .build());
+            for (S3Error error : response.errors()) {
+                log.warn("Could not delete {}: {} {}", error.key(), error.code(), error.message());
+                failedKeys.add(error.key());
+            }
+        }
+        return failedKeys;
     }
 
     @Override
@@ -154,7 +947,20 @@ public class AwsS3Service implements StorageService {
         return s3Client.utilities().getUrl(request).toString();
     }
 
+    /**
+     * The URL pages link to for an object. Without presigning this is the object's S3 URL; with it, the
+     * view endpoint, which redirects to a freshly signed URL so pages stay stable and cacheable.
+     */
+    private String viewUrl(String key) {
+        return presignedEnabled ? "/s3/view/" + key : generateUrl(key);
+    }
+
     private String generateKey(String filename) {
-        return UUID.randomUUID().toString() + "-" + filename;
+        // Client filenames may carry paths; keep only the last segment so the key stays one URL path segment
+        String name = StringUtils.getFilename(StringUtils.cleanPath(filename != null ? filename : ""));
+        if (name == null || name.isEmpty() || name.equals("..")) {
+            name = "upload";
+        }
+        return UUID.randomUUID().toString() + "-" + name;
     }
 }
\ No newline at end of file
@@ -0,0 +1,271 @@
+package com.microsoft.migration.assets.service;
+
+import com.microsoft.migration.assets.model.StoredObject;
+import com.microsoft.migration.assets.model.UploadResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Uploads many files in one request. Files are written to storage concurrently through its
+ * asynchronous API, at most max-concurrency at a time, and then recorded in batches so metadata
+ * and processing messages are saved with a few bulk writes instead of one transaction per file.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BulkUploadService {
+
+    private final StorageService storageService;
+
+    @Value("${upload.bulk.max-concurrency:8}")
+    private int maxConcurrency;
+
+    @Value("${upload.bulk.record-batch-size:100}")
+    private int recordBatchSize;
+
+    // Zip entries are read into memory before they are stored, so each one is capped
+    @Value("${upload.bulk.max-entry-size:50MB}")
+    private DataSize maxEntrySize;
+
+    @FunctionalInterface
+    private interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private record Upload(String filename, CompletableFuture<StoredObject> result) {
+    }
+
+    /**
+     * Upload a set of files, expanding any zip archives among them
+     */
+    public List<UploadResult> uploadFiles(List<MultipartFile> files) {
+        Semaphore permits = new Semaphore(maxConcurrency);
+        List<Upload> uploads = new ArrayList<>();
+        List<UploadResult> rejected = new ArrayList<>();
+        Set<String> filenames = new HashSet<>();
+        for (MultipartFile file : files) {
+            String filename = file.getOriginalFilename();
+            if (isZip(filename, file.getContentType())) {
+                try (InputStream inputStream = file.getInputStream()) {
+                    submitZipEntries(inputStream, permits, uploads, rejected, filenames);
+                } catch (IOException e) {
+                    rejected.add(UploadResult.failed(filename, "Failed to read archive: " + e.getMessage()));
+                }
+            } else if (file.isEmpty()) {
+                rejected.add(UploadResult.failed(filename, "Empty file"));
+            } else {
+                submit(uniqueName(filename, filenames), file.getContentType(), file.getSize(), file::getInputStream, permits, uploads);
+            }
+        }
+        return complete(uploads, rejected);
+    }
+
+    /**
+     * Upload every file in a zip archive read from the given stream
+     */
+    public List<UploadResult> uploadZip(InputStream inputStream) {
+        Semaphore permits = new Semaphore(maxConcurrency);
+        List<Upload> uploads = new ArrayList<>();
+        List<UploadResult> rejected = new ArrayList<>();
+        try {
+            submitZipEntries(inputStream, permits, uploads, rejected, new HashSet<>());
+        } catch (IOException e) {
+            // Entries read before the archive broke are still stored and recorded
+            rejected.add(UploadResult.failed(null, "Failed to read archive: " + e.getMessage()));
+        }
+        return complete(uploads, rejected);
+    }
+
+    private void submitZipEntries(InputStream inputStream, Semaphore permits, List<Upload> uploads,
+                                  List<UploadResult> rejected, Set<String> filenames) throws IOException {
+        ZipInputStream zip = new ZipInputStream(inputStream);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            String filename = baseName(entry.getName());
+            if (entry.isDirectory() || filename.isEmpty() || filename.startsWith(".") || entry.getName().startsWith("__MACOSX/")) {
+                continue;
+            }
+
+            // Entries are read in order from one stream, so buffer each before handing it off;
+            // waiting for a permit first keeps at most max-concurrency entries in memory
+            acquire(permits);
+            byte[] content;
+            try {
+                content = zip.readNBytes((int) maxEntrySize.toBytes() + 1);
+            } catch (IOException e) {
+                permits.release();
+                throw e;
+            }
+            if (content.length > maxEntrySize.toBytes()) {
+                permits.release();
+                rejected.add(UploadResult.failed(filename, "File exceeds " + maxEntrySize));
+                continue;
+            }
+            if (content.length == 0) {
+                permits.release();
+                rejected.add(UploadResult.failed(filename, "Empty file"));
+                continue;
+            }
+
+            String contentType = MediaTypeFactory.getMediaType(filename)
+                    .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                    .toString();
+            filename = uniqueName(filename, filenames);
+            uploads.add(new Upload(filename, store(filename, contentType, content.length,
+                    () -> new ByteArrayInputStream(content), permits)));
+        }
+    }
+
+    private void submit(String filename, String contentType, long size, Source source,
+                        Semaphore permits, List<Upload> uploads) {
+        acquire(permits);
+        uploads.add(new Upload(filename, store(filename, contentType, size, source, permits)));
+    }
+
+    private CompletableFuture<StoredObject> store(String filename, String contentType, long size,
+                                                  Source source, Semaphore permits) {
+        InputStream inputStream;
+        try {
+            inputStream = source.open();
+        } catch (IOException e) {
+            permits.release();
+            return CompletableFuture.failedFuture(e);
+        }
+        return storageService.storeObjectAsync(filename, contentType, inputStream, size)
+                .whenComplete((storedObject, error) -> {
+                    closeQuietly(inputStream, filename);
+                    permits.release();
+                });
+    }
+
+    private void closeQuietly(InputStream inputStream, String filename) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            log.warn("Could not close the upload stream of {}", filename, e);
+        }
+    }
+
+    private void acquire(Semaphore permits) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to upload", e);
+        }
+    }
+
+    /**
+     * Wait for every storage write, then record the stored objects in batches
+     */
+    private List<UploadResult> complete(List<Upload> uploads, List<UploadResult> rejected) {
+        List<UploadResult> results = new ArrayList<>(rejected);
+        List<StoredObject> stored = new ArrayList<>();
+        for (Upload upload : uploads) {
+            try {
+                stored.add(upload.result().join());
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                log.warn("Bulk upload of {} failed", upload.filename(), cause);
+                results.add(UploadResult.failed(upload.filename(), cause.getMessage()));
+            }
+        }
+
+        for (int start = 0; start < stored.size(); start += recordBatchSize) {
+            List<StoredObject> batch = stored.subList(start, Math.min(stored.size(), start + recordBatchSize));
+            try {
+                List<String> keys = storageService.recordUploads(batch);
+                for (int i = 0; i < batch.size(); i++) {
+                    StoredObject storedObject = batch.get(i);
+                    String key = keys.get(i);
+                    boolean duplicate = storedObject.isDuplicate() || !key.equals(storedObject.getKey());
+                    results.add(new UploadResult(storedObject.getFilename(), key,
+                            duplicate ? UploadResult.Status.DUPLICATE : UploadResult.Status.STORED, null));
+                }
+            } catch (RuntimeException e) {
+                // Part of the batch may have been recorded before it failed, so record the rest one by one;
+                // recording an object again is a no-op
+                log.warn("Failed to record a batch of {} uploads, recording them one by one", batch.size(), e);
+                batch.forEach(storedObject -> results.add(recordOne(storedObject)));
+            }
+        }
+        return results;
+    }
+
+    private UploadResult recordOne(StoredObject storedObject) {
+        try {
+            String key = storageService.recordUploads(List.of(storedObject)).get(0);
+            boolean duplicate = storedObject.isDuplicate() || !key.equals(storedObject.getKey());
+            return new UploadResult(storedObject.getFilename(), key,
+                    duplicate ? UploadResult.Status.DUPLICATE : UploadResult.Status.STORED, null);
+        } catch (RuntimeException e) {
+            log.error("Failed to record the upload of {}", storedObject.getFilename(), e);
+            discard(storedObject);
+            return UploadResult.failed(storedObject.getFilename(), "Failed to record upload: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Delete an object whose record did not commit, so nothing is left in storage without its metadata.
+     * Duplicates share content recorded earlier and stored nothing of their own.
+     */
+    private void discard(StoredObject storedObject) {
+        if (storedObject.isDuplicate()) {
+            return;
+        }
+        try {
+            storageService.deleteObject(storedObject.getKey());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not delete the unrecorded upload {}", storedObject.getKey(), e);
+        }
+    }
+
+    /**
+     * Entries of different folders, or files of different archives, may share a name. Number the later
+     * ones so no file of the upload replaces another where storage keys follow the filename.
+     */
+    private static String uniqueName(String filename, Set<String> filenames) {
+        if (filename == null || filenames.add(filename)) {
+            return filename;
+        }
+        int dotIndex = filename.lastIndexOf('.');
+        String baseName = dotIndex > 0 ? filename.substring(0, dotIndex) : filename;
+        String extension = dotIndex > 0 ? filename.substring(dotIndex) : "";
+        for (int copy = 2; ; copy++) {
+            String candidate = baseName + " (" + copy + ")" + extension;
+            if (filenames.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    private static boolean isZip(String filename, String contentType) {
+        return "application/zip".equals(contentType)
+                || "application/x-zip-compressed".equals(contentType)
+                || (filename != null && filename.toLowerCase().endsWith(".zip"));
+    }
+
+    private static String baseName(String entryName) {
+        int lastSlashIndex = Math.max(entryName.lastIndexOf('/'), entryName.lastIndexOf('\\'));
+        return lastSlashIndex >= 0 ? entryName.substring(lastSlashIndex + 1) : entryName;
+    }
+}
@@ -0,0 +1,277 @@
+package com.microsoft.migration.assets.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.microsoft.migration.assets.model.PresignedUpload;
+import com.microsoft.migration.assets.model.ProcessingStatus;
+import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
+import com.microsoft.migration.assets.model.StoredObject;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Read-through cache in front of the active storage. Object details and listing pages are kept on
+ * the heap for a short time, and the bodies of small objects (mostly thumbnails) off the heap in
+ * direct buffers within a byte budget. Uploads and deletes made through this service invalidate the
+ * affected entries, renditions included. Details of objects still being processed are not cached, so
+ * new thumbnails show on the next request; other changes made elsewhere show once the entries expire.
+ * A cached body is only served while it matches the ETag of the object details.
+ */
+@RequiredArgsConstructor
+public class CachingStorageService implements StorageService {
+
+    private final StorageService delegate;
+    private final Cache<String, S3StorageItem> objectInfoCache;
+    private final Cache<PageKey, S3StoragePage> pageCache;
+    private final Cache<String, CachedBody> bodyCache;
+    private final long maxBodySize;
+
+    /**
+     * A listing page is identified by its size and continuation token
+     */
+    public record PageKey(int pageSize, String continuationToken) {
+    }
+
+    /**
+     * An object body along with the ETag of the object it was read from
+     */
+    public record CachedBody(String eTag, ByteBuffer body) {
+    }
+
+    @Override
+    public S3StoragePage listObjects(int pageSize, String continuationToken) {
+        return pageCache.get(new PageKey(pageSize, continuationToken),
+                page -> delegate.listObjects(page.pageSize(), page.continuationToken()));
+    }
+
+    @Override
+    public Optional<S3StorageItem> getObjectInfo(String key) throws IOException {
+        S3StorageItem cached = objectInfoCache.getIfPresent(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        // Missing objects are not cached, so an object shows as soon as it has been uploaded. Neither are
+        // objects still being processed, so their thumbnails show as soon as the worker has written them.
+        Optional<S3StorageItem> object = delegate.getObjectInfo(key);
+        object.filter(item -> item.getProcessingStatus() != ProcessingStatus.PENDING)
+                .ifPresent(item -> objectInfoCache.put(key, item));
+        return object;
+    }
+
+    @Override
+    public String uploadObject(String filename, String contentType, InputStream inputStream, long size) throws IOException {
+        String key = delegate.uploadObject(filename, contentType, inputStream, size);
+        // Local storage writes over an existing file of the same name
+        invalidate(List.of(key));
+        return key;
+    }
+
+    @Override
+    public StoredObject storeObject(String filename, String contentType, InputStream inputStream, long size) throws IOException {
+        return delegate.storeObject(filename, contentType, inputStream, size);
+    }
+
+    @Override
+    public CompletableFuture<StoredObject> storeObjectAsync(String filename, String contentType, InputStream inputStream, long size) {
+        return delegate.storeObjectAsync(filename, contentType, inputStream, size);
+    }
+
+    @Override
+    public List<String> recordUploads(List<StoredObject> storedObjects) {
+        try {
+            return delegate.recordUploads(storedObjects);
+        } finally {
+            // Stored keys may replace existing objects, and new keys can land on any page
+            invalidate(storedObjects.stream().map(StoredObject::getKey).toList());
+        }
+    }
+
+    @Override
+    public boolean isPresignedUploadEnabled() {
+        return delegate.isPresignedUploadEnabled();
+    }
+
+    @Override
+    public Optional<PresignedUpload> createPresignedUpload(String filename, String contentType, long size, String sha256) {
+        Optional<PresignedUpload> upload = delegate.createPresignedUpload(filename, contentType, size, sha256);
+        // A duplicate is recorded right away, so it is listed without completing an upload
+        upload.filter(PresignedUpload::isDuplicate).ifPresent(duplicate -> invalidate(List.of(duplicate.getKey())));
+        return upload;
+    }
+
+    @Override
+    public String completePresignedUpload(String key) throws IOException {
+        String finalKey = delegate.completePresignedUpload(key);
+        invalidate(List.of(key, finalKey));
+        return finalKey;
+    }
+
+    @Override
+    public Optional<URI> getPresignedDownloadUrl(String key) {
+        return delegate.getPresignedDownloadUrl(key);
+    }
+
+    @Override
+    public InputStream getObject(String key) throws IOException {
+        Optional<S3StorageItem> object = getObjectInfo(key);
+        if (object.isEmpty() || object.get().getSize() > maxBodySize) {
+            return delegate.getObject(key);
+        }
+        S3StorageItem item = object.get();
+
+        CachedBody cached = bodyCache.getIfPresent(key);
+        if (cached != null && !Objects.equals(cached.eTag(), item.getETag())) {
+            // Read before the object last changed
+            bodyCache.invalidate(key);
+        }
+        try {
+            cached = bodyCache.get(key, k -> new CachedBody(item.getETag(), loadBody(k)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (cached.body().capacity() != item.getSize()) {
+            // The object changed after its details were cached; neither entry describes it any more,
+            // so read the details again and serve the body from storage
+            objectInfoCache.invalidate(key);
+            bodyCache.invalidate(key);
+            getObjectInfo(key);
+            return delegate.getObject(key);
+        }
+        return new ByteBufferInputStream(cached.body().duplicate());
+    }
+
+    @Override
+    public InputStream getObject(String key, long offset, long length) throws IOException {
+        CachedBody cached = bodyCache.getIfPresent(key);
+        if (cached == null || !isCurrent(key, cached)) {
+            return delegate.getObject(key, offset, length);
+        }
+        ByteBuffer range = cached.body().duplicate();
+        range.position((int) Math.min(offset, range.limit()));
+        range.limit((int) Math.min(range.limit(), offset + length));
+        return new ByteBufferInputStream(range);
+    }
+
+    @Override
+    public Optional<Path> getLocalFile(String key) {
+        // File-based storage serves straight from the file system, which has its own page cache
+        return delegate.getLocalFile(key);
+    }
+
+    @Override
+    public void deleteObject(String key) throws IOException {
+        // The renditions are looked up first; the storage forgets them along with the original
+        Set<String> renditionKeys = delegate.getRenditionKeys(List.of(key));
+        try {
+            delegate.deleteObject(key);
+        } finally {
+            invalidate(List.of(key), renditionKeys);
+        }
+    }
+
+    @Override
+    public void deleteObjects(Collection<String> keys) throws IOException {
+        Set<String> renditionKeys = delegate.getRenditionKeys(keys);
+        try {
+            delegate.deleteObjects(keys);
+        } finally {
+            invalidate(keys, renditionKeys);
+        }
+    }
+
+    @Override
+    public String getStorageType() {
+        return delegate.getStorageType();
+    }
+
+    @Override
+    public String getThumbnailKey(String key) {
+        return delegate.getThumbnailKey(key);
+    }
+
+    @Override
+    public Set<String> getRenditionKeys(Collection<String> keys) {
+        return delegate.getRenditionKeys(keys);
+    }
+
+    private void invalidate(Collection<String> keys) {
+        invalidate(keys, delegate.getRenditionKeys(keys));
+    }
+
+    private void invalidate(Collection<String> keys, Collection<String> renditionKeys) {
+        objectInfoCache.invalidateAll(keys);
+        bodyCache.invalidateAll(keys);
+        objectInfoCache.invalidateAll(renditionKeys);
+        bodyCache.invalidateAll(renditionKeys);
+        pageCache.invalidateAll();
+    }
+
+    private boolean isCurrent(String key, CachedBody cached) throws IOException {
+        Optional<S3StorageItem> object = getObjectInfo(key);
+        return object.isPresent() && Objects.equals(cached.eTag(), object.get().getETag());
+    }
+
+    private ByteBuffer loadBody(String key) {
+        try (InputStream inputStream = delegate.getObject(key)) {
+            byte[] content = inputStream.readAllBytes();
+            // Off the heap, so a large cache of thumbnails adds nothing to garbage collection work
+            return ByteBuffer.allocateDirect(content.length).put(content).flip().asReadOnlyBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a cached body without copying it back onto the heap first
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
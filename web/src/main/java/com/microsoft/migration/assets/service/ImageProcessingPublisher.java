@@ -0,0 +1,105 @@
+package com.microsoft.migration.assets.service;
+
+import com.microsoft.migration.assets.model.ImageProcessingMessage;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static com.microsoft.migration.assets.config.RabbitConfig.EXCHANGE_NAME;
+
+/**
+ * Publishes thumbnail jobs with correlated, asynchronous publisher confirms. Callers get one future
+ * per message, completed with whether the broker confirmed it; at most max-outstanding-confirms
+ * messages are awaiting a confirm at any time. Unroutable messages are returned and count as
+ * unconfirmed. Unconfirmed messages are not retried here: the outbox keeps them until they are.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageProcessingPublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+
+    @Value("${messaging.publisher.max-outstanding-confirms:256}")
+    private int maxOutstandingConfirms;
+
+    // How long a publish waits for room in the confirm window before the message counts as unconfirmed
+    @Value("${messaging.publisher.window-timeout:10s}")
+    private Duration windowTimeout;
+
+    private Semaphore outstandingConfirms;
+
+    @PostConstruct
+    public void init() {
+        outstandingConfirms = new Semaphore(maxOutstandingConfirms);
+    }
+
+    /**
+     * Publish a batch of messages on a single channel without waiting for their confirms
+     */
+    public List<CompletableFuture<Boolean>> publishAll(List<ImageProcessingMessage> messages) {
+        List<CompletableFuture<Boolean>> confirms = new ArrayList<>(messages.size());
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (ImageProcessingMessage message : messages) {
+                    confirms.add(send(operations, message));
+                }
+                return null;
+            });
+        } catch (AmqpException e) {
+            log.warn("Failed to publish {} thumbnail jobs: {}", messages.size() - confirms.size(), e.getMessage());
+        }
+
+        // Anything not handed to the broker is unconfirmed
+        while (confirms.size() < messages.size()) {
+            confirms.add(CompletableFuture.completedFuture(false));
+        }
+        return confirms;
+    }
+
+    private CompletableFuture<Boolean> send(RabbitOperations operations, ImageProcessingMessage message) {
+        try {
+            if (!outstandingConfirms.tryAcquire(windowTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Confirm window full, deferring thumbnail job for {}", message.getKey());
+                return CompletableFuture.completedFuture(false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.completedFuture(false);
+        }
+
+        CorrelationData correlation = new CorrelationData(UUID.randomUUID().toString());
+        try {
+            operations.convertAndSend(EXCHANGE_NAME, message.getStorageType(), message, correlation);
+        } catch (AmqpException e) {
+            outstandingConfirms.release();
+            log.warn("Failed to publish thumbnail job for {}: {}", message.getKey(), e.getMessage());
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return correlation.getFuture().handle((confirm, error) -> {
+            outstandingConfirms.release();
+            if (error == null && confirm.isAck() && correlation.getReturned() == null) {
+                return true;
+            }
+            String reason = error != null ? error.getMessage()
+                    : correlation.getReturned() != null ? "unroutable" : confirm.getReason();
+            log.warn("Thumbnail job for {} was not confirmed: {}", message.getKey(), reason);
+            return false;
+        });
+    }
+}
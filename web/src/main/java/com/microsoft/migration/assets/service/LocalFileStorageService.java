@@ -1,41 +1,57 @@
 package com.microsoft.migration.assets.service;
 
 import com.microsoft.migration.assets.model.ImageProcessingMessage;
+import com.microsoft.migration.assets.model.ProcessingStatus;
 import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
+import com.microsoft.migration.assets.model.StoredObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
-import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.annotation.PostConstruct;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
-
-import static com.microsoft.migration.assets.config.RabbitConfig.QUEUE_NAME;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 
 @Service
 @Profile("dev") // Only active when dev profile is active
 public class LocalFileStorageService implements StorageService {
 
     private static final Logger logger = LoggerFactory.getLogger(LocalFileStorageService.class);
+    private static final String THUMBNAIL_RENDITION = "thumbnail";
     
-    private final RabbitTemplate rabbitTemplate;
+    private final OutboxService outboxService;
     
     @Value("${local.storage.directory:../storage}")
     private String storageDirectory;
+
+    // Local storage keeps no metadata to record renditions in, so they are recognized by name: the
+    // original's name with "_" and one of these before any extension. Keep in line with the names
+    // in worker.thumbnail.renditions; their formats may differ from the original's.
+    @Value("${local.storage.rendition-names:grid,thumbnail,lightbox}")
+    private List<String> renditionNames;
     
     private Path rootLocation;
 
-    public LocalFileStorageService(RabbitTemplate rabbitTemplate) {
-        this.rabbitTemplate = rabbitTemplate;
+    public LocalFileStorageService(OutboxService outboxService) {
+        this.outboxService = outboxService;
     }
     
     @PostConstruct
@@ -51,89 +67,268 @@ public class LocalFileStorageService implements StorageService {
     }
 
     @Override
-    public List<S3StorageItem> listObjects() {
-        try {
-            return Files.walk(rootLocation, 1)
-                .filter(path -> !path.equals(rootLocation))
-                .map(path -> {
-                    try {
-                        String filename = path.getFileName().toString();
-                        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
-                        return new S3StorageItem(
-                            filename,
-                            filename,
-                            Files.size(path),
-                            attrs.lastModifiedTime().toInstant(),
-                            attrs.creationTime().toInstant(),
-                            generateUrl(filename)
-                        );
-                    } catch (IOException e) {
-                        logger.error("Failed to read file attributes", e);
-                        return null;
-                    }
-                })
-                .filter(s3StorageItem -> s3StorageItem != null)
-                .collect(Collectors.toList());
+    public S3StoragePage listObjects(int pageSize, String continuationToken) {
+        String cursor = decodeCursor(continuationToken);
+
+        // Keep only the next pageSize + 1 names after the cursor, so memory stays bounded by the page size
+        TreeSet<String> window = new TreeSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(rootLocation)) {
+            for (Path path : stream) {
+                String filename = path.getFileName().toString();
+                if (cursor != null && filename.compareTo(cursor) <= 0) {
+                    continue;
+                }
+                // Renditions are shown through their originals
+                if (isRendition(filename)) {
+                    continue;
+                }
+                window.add(filename);
+                if (window.size() > pageSize + 1) {
+                    window.pollLast();
+                }
+            }
         } catch (IOException e) {
             logger.error("Failed to list files", e);
-            return new ArrayList<>();
+            return new S3StoragePage(new ArrayList<>(), null);
+        }
+
+        boolean hasMore = window.size() > pageSize;
+        if (hasMore) {
+            window.pollLast();
+        }
+
+        List<S3StorageItem> items = new ArrayList<>(window.size());
+        for (String filename : window) {
+            S3StorageItem item = toStorageItem(rootLocation.resolve(filename));
+            if (item != null) {
+                items.add(item);
+            }
         }
+
+        String nextToken = hasMore ? encodeCursor(window.last()) : null;
+        return new S3StoragePage(items, nextToken);
     }
 
     @Override
-    public void uploadObject(MultipartFile file) throws IOException {
-        if (file.isEmpty()) {
+    public Optional<S3StorageItem> getObjectInfo(String key) throws IOException {
+        Path file = resolveKey(key).orElse(null);
+        if (file == null || !Files.exists(file)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(toStorageItem(file));
+    }
+
+    private S3StorageItem toStorageItem(Path path) {
+        try {
+            String filename = path.getFileName().toString();
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+
+            // Local storage keeps no metadata, so the thumbnail is known to exist once its file does;
+            // look for it in the original's format first, then in any other
+            String thumbnailKey = getThumbnailKey(filename);
+            if (!Files.exists(rootLocation.resolve(thumbnailKey))) {
+                thumbnailKey = findRenditions(filename).get(THUMBNAIL_RENDITION);
+            }
+            String thumbnailUrl = thumbnailKey != null ? generateUrl(thumbnailKey) : null;
+
+            // Only images are processed; other files never get a thumbnail, so they have no status
+            String contentType = Files.probeContentType(path);
+            ProcessingStatus status = thumbnailUrl != null ? ProcessingStatus.COMPLETED
+                    : contentType != null && contentType.startsWith("image/") ? ProcessingStatus.PENDING : null;
+
+            return new S3StorageItem(
+                filename,
+                filename,
+                attrs.size(),
+                attrs.lastModifiedTime().toInstant(),
+                attrs.creationTime().toInstant(),
+                generateUrl(filename),
+                contentType,
+                generateETag(attrs),
+                thumbnailUrl,
+                thumbnailUrl != null ? Map.of(THUMBNAIL_RENDITION, thumbnailUrl) : Map.of(),
+                status
+            );
+        } catch (IOException e) {
+            logger.error("Failed to read file attributes", e);
+            return null;
+        }
+    }
+
+    private String generateETag(BasicFileAttributes attrs) {
+        // Files are overwritten in place, so derive the validator from modification time and size
+        return "\"" + Long.toHexString(attrs.lastModifiedTime().toMillis()) + "-" + Long.toHexString(attrs.size()) + "\"";
+    }
+
+    private String encodeCursor(String filename) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(filename.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String decodeCursor(String continuationToken) {
+        if (continuationToken == null || continuationToken.isEmpty()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(continuationToken), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring invalid continuation token: {}", continuationToken);
+            return null;
+        }
+    }
+
+    @Override
+    public StoredObject storeObject(String filename, String contentType, InputStream inputStream, long size) throws IOException {
+        if (size == 0) {
             throw new IOException("Failed to store empty file");
         }
         
-        String filename = StringUtils.cleanPath(file.getOriginalFilename());
-        if (filename.contains("..")) {
-            throw new IOException("Cannot store file with relative path outside current directory");
+        // Client filenames may carry paths, absolute ones included; keep only the last segment
+        filename = StringUtils.getFilename(StringUtils.cleanPath(filename != null ? filename : ""));
+        if (filename == null || filename.isEmpty() || filename.equals("..")) {
+            throw new IOException("Cannot store file without a name");
+        }
+
+        Path targetLocation = resolveKey(filename)
+                .orElseThrow(() -> new IOException("Cannot store file outside the storage directory"));
+        long storedSize = Files.copy(inputStream, targetLocation, StandardCopyOption.REPLACE_EXISTING);
+        if (storedSize == 0) {
+            Files.deleteIfExists(targetLocation);
+            throw new IOException("Failed to store empty file");
         }
-        
-        Path targetLocation = rootLocation.resolve(filename);
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
         logger.info("Stored file: {}", targetLocation);
+        return new StoredObject(filename, filename, contentType, storedSize, null, false);
+    }
 
-        // Send message to queue for thumbnail generation
-        ImageProcessingMessage message = new ImageProcessingMessage(
-            filename,
-            file.getContentType(),
-            getStorageType(),
-            file.getSize()
-        );
-        rabbitTemplate.convertAndSend(QUEUE_NAME, message);
+    @Override
+    public List<String> recordUploads(List<StoredObject> storedObjects) {
+        // Local storage keeps no metadata; only queue messages for thumbnail generation through the outbox
+        List<ImageProcessingMessage> messages = storedObjects.stream()
+                .map(storedObject -> new ImageProcessingMessage(
+                    storedObject.getKey(),
+                    storedObject.getContentType(),
+                    getStorageType(),
+                    storedObject.getSize()
+                ))
+                .toList();
+        outboxService.enqueue(messages);
+        return storedObjects.stream().map(StoredObject::getKey).toList();
     }
 
     @Override
     public InputStream getObject(String key) throws IOException {
-        Path file = rootLocation.resolve(key);
+        Path file = resolveKey(key).orElseThrow(() -> new FileNotFoundException("File not found: " + key));
         if (!Files.exists(file)) {
             throw new FileNotFoundException("File not found: " + key);
         }
         return new BufferedInputStream(Files.newInputStream(file));
     }
 
+    @Override
+    public InputStream getObject(String key, long offset, long length) throws IOException {
+        Path file = resolveKey(key).orElseThrow(() -> new FileNotFoundException("File not found: " + key));
+        if (!Files.exists(file)) {
+            throw new FileNotFoundException("File not found: " + key);
+        }
+        SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ);
+        channel.position(offset);
+        return new BufferedInputStream(Channels.newInputStream(channel));
+    }
+
+    @Override
+    public Optional<Path> getLocalFile(String key) {
+        return resolveKey(key).filter(Files::isRegularFile);
+    }
+
+    @Override
+    public Set<String> getRenditionKeys(Collection<String> keys) {
+        Set<String> renditionKeys = new LinkedHashSet<>();
+        keys.forEach(key -> renditionKeys.addAll(findRenditions(key).values()));
+        return renditionKeys;
+    }
+
+    /**
+     * Whether a file is named like a rendition: its name without extension ends with "_" and a rendition name
+     */
+    private boolean isRendition(String filename) {
+        String baseName = stripExtension(filename);
+        return renditionNames.stream().anyMatch(renditionName -> baseName.endsWith("_" + renditionName));
+    }
+
+    /**
+     * The rendition files stored for a key, by rendition name, in whatever format they were written
+     */
+    private Map<String, String> findRenditions(String key) {
+        String baseName = stripExtension(key);
+        Map<String, String> renditions = new LinkedHashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(rootLocation,
+                path -> path.getFileName().toString().startsWith(baseName + "_"))) {
+            for (Path path : stream) {
+                String filename = path.getFileName().toString();
+                String renditionName = stripExtension(filename).substring(baseName.length() + 1);
+                if (renditionNames.contains(renditionName)) {
+                    renditions.put(renditionName, filename);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not look up renditions of {}: {}", key, e.getMessage());
+        }
+        return renditions;
+    }
+
+    private static String stripExtension(String filename) {
+        int dotIndex = filename.lastIndexOf('.');
+        return dotIndex > 0 ? filename.substring(0, dotIndex) : filename;
+    }
+
+    /**
+     * Resolve a client-supplied key to a file in the storage directory, or empty when the key
+     * points anywhere else (absolute paths, ".." segments)
+     */
+    private Optional<Path> resolveKey(String key) {
+        Path file = rootLocation.resolve(key).normalize();
+        if (!file.startsWith(rootLocation) || file.equals(rootLocation)) {
+            return Optional.empty();
+        }
+        return Optional.of(file);
+    }
+
+    @Override
+    public void deleteObjects(Collection<String> keys) throws IOException {
+        // Files have no batch delete; remove them one by one and report the ones that failed together
+        List<String> failedKeys = new ArrayList<>();
+        for (String key : keys) {
+            try {
+                deleteObject(key);
+            } catch (IOException e) {
+                logger.warn("Could not delete {}: {}", key, e.getMessage());
+                failedKeys.add(key);
+            }
+        }
+        if (!failedKeys.isEmpty()) {
+            throw new IOException("Failed to delete " + failedKeys.size() + " of " + keys.size() + " objects");
+        }
+    }
+
     @Override
     public void deleteObject(String key) throws IOException {
-        // Delete both original and thumbnail if it exists
-        Path file = rootLocation.resolve(key);
+        // Delete the original and every rendition that exists
+        Path file = resolveKey(key).orElseThrow(() -> new FileNotFoundException("File not found: " + key));
         if (!Files.exists(file)) {
             throw new FileNotFoundException("File not found: " + key);
         }
         Files.delete(file);
         logger.info("Deleted file: {}", file);
 
-        // Try to delete thumbnail if it exists
-        try {
-            Path thumbnailFile = rootLocation.resolve(getThumbnailKey(key));
-            if (Files.exists(thumbnailFile)) {
-                Files.delete(thumbnailFile);
-                logger.info("Deleted thumbnail file: {}", thumbnailFile);
+        for (String renditionKey : findRenditions(key).values()) {
+            try {
+                Path renditionFile = resolveKey(renditionKey).orElse(null);
+                if (renditionFile != null && Files.deleteIfExists(renditionFile)) {
+                    logger.info("Deleted rendition file: {}", renditionFile);
+                }
+            } catch (Exception e) {
+                // Ignore renditions that can't be deleted
+                logger.warn("Could not delete rendition {} of {}: {}", renditionKey, key, e.getMessage());
             }
-        } catch (Exception e) {
-            // Ignore if thumbnail doesn't exist or can't be deleted
-            logger.warn("Could not delete thumbnail for {}: {}", key, e.getMessage());
         }
     }
 
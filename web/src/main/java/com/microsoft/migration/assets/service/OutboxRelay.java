@@ -0,0 +1,194 @@
+package com.microsoft.migration.assets.service;
+
+import com.microsoft.migration.assets.model.ImageProcessingMessage;
+import com.microsoft.migration.assets.model.OutboxMessage;
+import com.microsoft.migration.assets.repository.OutboxMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the outbox table to RabbitMQ in batches on a background thread. Each batch is read with one
+ * query, published on one channel, and the confirmed rows are removed with one delete, so the cost
+ * per upload is a fraction of a round trip. Messages stay in the outbox until the broker confirms
+ * them, so delivery is at least once; the worker skips jobs that are already done. Each batch is
+ * claimed in a short transaction that stamps a lease on its rows, so several instances relay side by
+ * side without publishing the same rows, and no connection or row lock is held while waiting for
+ * the broker. A relay that dies mid-batch leaves the lease to expire.
+ */
+@Slf4j
+@Component
+public class OutboxRelay {
+
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final ImageProcessingPublisher imageProcessingPublisher;
+    private final TransactionTemplate transactionTemplate;
+
+    // Time from the outbox write to the broker confirm, and the size of each relayed batch
+    private final Timer relayLatency;
+    private final DistributionSummary batchSizes;
+    private final Counter relayedMessages;
+
+    @Value("${messaging.outbox.batch-size:100}")
+    private int batchSize;
+
+    // Fallback poll, for jobs committed by other instances or left over after a failure
+    @Value("${messaging.outbox.poll-interval:1s}")
+    private Duration pollInterval;
+
+    @Value("${messaging.outbox.confirm-timeout:10s}")
+    private Duration confirmTimeout;
+
+    // How long a claimed batch is left to its relay; longer than the confirm timeout
+    @Value("${messaging.outbox.claim-lease:30s}")
+    private Duration claimLease;
+
+    private final Semaphore wakeUps = new Semaphore(0);
+    private volatile boolean running;
+    private Thread relayThread;
+
+    public OutboxRelay(OutboxMessageRepository outboxMessageRepository,
+                       ImageProcessingPublisher imageProcessingPublisher,
+                       PlatformTransactionManager transactionManager,
+                       MeterRegistry meterRegistry) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.imageProcessingPublisher = imageProcessingPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.relayLatency = Timer.builder("outbox.relay.latency")
+                .description("Time from writing a thumbnail job to the outbox until the broker confirmed it")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("outbox.relay.batch.size")
+                .description("Thumbnail jobs published per relay batch")
+                .register(meterRegistry);
+        this.relayedMessages = Counter.builder("outbox.relay.messages")
+                .description("Thumbnail jobs relayed from the outbox and confirmed")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        relayThread = Thread.ofPlatform().name("outbox-relay").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (relayThread != null) {
+            relayThread.interrupt();
+        }
+    }
+
+    /**
+     * Signal that new jobs were committed
+     */
+    public void wakeUp() {
+        wakeUps.release();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                while (running && relayBatch() == batchSize) {
+                    // A full batch means there may be more waiting
+                }
+                wakeUps.tryAcquire(pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+                wakeUps.drainPermits();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Outbox relay failed, retrying in {}", pollInterval, e);
+                try {
+                    Thread.sleep(pollInterval);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Publish the oldest batch of pending jobs and delete the ones the broker confirmed.
+     * Returns the number of jobs read.
+     */
+    private int relayBatch() {
+        List<OutboxMessage> batch = claimBatch();
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        List<ImageProcessingMessage> messages = batch.stream().map(OutboxMessage::toMessage).toList();
+        List<CompletableFuture<Boolean>> confirms = imageProcessingPublisher.publishAll(messages);
+
+        long deadline = System.nanoTime() + confirmTimeout.toNanos();
+        List<String> confirmedIds = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            OutboxMessage message = batch.get(i);
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                if (confirms.get(i).get(remaining, TimeUnit.NANOSECONDS)) {
+                    confirmedIds.add(message.getId());
+                    relayLatency.record(Duration.between(message.getCreatedAt(), LocalDateTime.now()));
+                }
+            } catch (InterruptedException e) {
+                // Shutting down: remove what was confirmed so far and leave the rest in the outbox
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.warn("No confirm for thumbnail job {}, it stays in the outbox", message.getObjectKey());
+            }
+        }
+
+        if (!confirmedIds.isEmpty()) {
+            outboxMessageRepository.deleteAllByIdInBatch(confirmedIds);
+        }
+        if (confirmedIds.size() < batch.size()) {
+            List<String> unconfirmedIds = batch.stream()
+                    .map(OutboxMessage::getId)
+                    .filter(id -> !confirmedIds.contains(id))
+                    .toList();
+            outboxMessageRepository.releaseClaims(unconfirmedIds);
+        }
+        batchSizes.record(batch.size());
+        relayedMessages.increment(confirmedIds.size());
+        if (confirmedIds.size() < batch.size()) {
+            // Leave the rest for the next poll rather than spinning on a failing broker
+            return 0;
+        }
+        return batch.size();
+    }
+
+    /**
+     * Lease the oldest unclaimed jobs to this relay. The row locks only last for this short transaction.
+     */
+    private List<OutboxMessage> claimBatch() {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<OutboxMessage> batch = outboxMessageRepository.findUnclaimed(now, PageRequest.of(0, batchSize));
+            // Managed rows, so the lease is written when the transaction commits
+            batch.forEach(message -> message.setClaimedUntil(now.plus(claimLease)));
+            return batch;
+        });
+    }
+}
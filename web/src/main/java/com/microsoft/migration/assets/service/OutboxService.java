@@ -0,0 +1,73 @@
+package com.microsoft.migration.assets.service;
+
+import com.microsoft.migration.assets.model.ImageAlias;
+import com.microsoft.migration.assets.model.ImageMetadata;
+import com.microsoft.migration.assets.model.ImageProcessingMessage;
+import com.microsoft.migration.assets.model.OutboxMessage;
+import com.microsoft.migration.assets.repository.ImageAliasRepository;
+import com.microsoft.migration.assets.repository.ImageMetadataRepository;
+import com.microsoft.migration.assets.repository.OutboxMessageRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+/**
+ * Records uploads and their thumbnail jobs atomically. The job is written to the outbox table in the
+ * same transaction as the metadata, and the {@link OutboxRelay} publishes it once committed.
+ */
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+
+    private final ImageMetadataRepository imageMetadataRepository;
+    private final ImageAliasRepository imageAliasRepository;
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final OutboxRelay outboxRelay;
+
+    /**
+     * Save the metadata of an upload together with its thumbnail job. Flushes so a duplicate
+     * content hash fails here rather than at commit.
+     */
+    @Transactional
+    public void recordUpload(ImageMetadata metadata, ImageProcessingMessage message) {
+        imageMetadataRepository.saveAndFlush(metadata);
+        outboxMessageRepository.save(new OutboxMessage(message));
+        wakeRelayAfterCommit();
+    }
+
+    /**
+     * Save the metadata and thumbnail jobs of several uploads in one transaction, as JDBC batches, along
+     * with the aliases of uploads whose content was already stored. Aliases need no thumbnail job.
+     */
+    @Transactional
+    public void recordUploads(List<ImageMetadata> metadata, List<ImageProcessingMessage> messages,
+                              List<ImageAlias> aliases) {
+        imageMetadataRepository.saveAllAndFlush(metadata);
+        imageAliasRepository.saveAllAndFlush(aliases);
+        outboxMessageRepository.saveAll(messages.stream().map(OutboxMessage::new).toList());
+        wakeRelayAfterCommit();
+    }
+
+    /**
+     * Queue thumbnail jobs for uploads that keep no metadata
+     */
+    @Transactional
+    public void enqueue(List<ImageProcessingMessage> messages) {
+        outboxMessageRepository.saveAll(messages.stream().map(OutboxMessage::new).toList());
+        wakeRelayAfterCommit();
+    }
+
+    private void wakeRelayAfterCommit() {
+        // Publish right after commit instead of waiting for the next poll
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                outboxRelay.wakeUp();
+            }
+        });
+    }
+}
@@ -1,11 +1,21 @@
 package com.microsoft.migration.assets.service;
 
+import com.microsoft.migration.assets.model.PresignedUpload;
 import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
+import com.microsoft.migration.assets.model.StoredObject;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface for storage operations that can be implemented by different storage providers
@@ -14,24 +24,118 @@ import java.util.List;
 public interface StorageService {
     
     /**
-     * List all objects in storage
+     * List one page of objects in storage, starting after the given continuation token
+     * (null for the first page)
      */
-    List<S3StorageItem> listObjects();
+    S3StoragePage listObjects(int pageSize, String continuationToken);
     
+    /**
+     * Get the details of a single object by key, without listing the storage
+     */
+    Optional<S3StorageItem> getObjectInfo(String key) throws IOException;
+
     /**
      * Upload file to storage
      */
-    void uploadObject(MultipartFile file) throws IOException;
+    default void uploadObject(MultipartFile file) throws IOException {
+        try (InputStream inputStream = file.getInputStream()) {
+            uploadObject(file.getOriginalFilename(), file.getContentType(), inputStream, file.getSize());
+        }
+    }
+
+    /**
+     * Upload a stream to storage without buffering it in full. The size may be -1 when unknown.
+     * Returns the key of the stored object.
+     */
+    default String uploadObject(String filename, String contentType, InputStream inputStream, long size) throws IOException {
+        StoredObject storedObject = storeObject(filename, contentType, inputStream, size);
+        return recordUploads(List.of(storedObject)).get(0);
+    }
+
+    /**
+     * Write a stream to storage without recording it. The object is not listed with metadata or
+     * processed until it is passed to {@link #recordUploads}. The size may be -1 when unknown.
+     */
+    StoredObject storeObject(String filename, String contentType, InputStream inputStream, long size) throws IOException;
+
+    /**
+     * Asynchronous {@link #storeObject}. The stream must stay open until the returned future completes.
+     * Storage without a non-blocking client runs the blocking call on a virtual thread.
+     */
+    default CompletableFuture<StoredObject> storeObjectAsync(String filename, String contentType, InputStream inputStream, long size) {
+        return onVirtualThread(() -> storeObject(filename, contentType, inputStream, size));
+    }
+
+    /**
+     * Record stored objects in bulk: their metadata and processing messages are saved in one
+     * transaction. Returns the final key of each object, in order; duplicates keep their own key and
+     * share the content of the object that already holds it.
+     */
+    List<String> recordUploads(List<StoredObject> storedObjects);
     
+    /**
+     * Whether clients can upload straight to storage through {@link #createPresignedUpload}
+     */
+    default boolean isPresignedUploadEnabled() {
+        return false;
+    }
+
+    /**
+     * Let the client upload an object straight to storage instead of through this application. Returns
+     * the URL to upload to, or empty when the storage does not support direct uploads. The SHA-256 of the
+     * content is optional (hex, may be null); when given, content that is already stored is detected
+     * before any upload.
+     */
+    default Optional<PresignedUpload> createPresignedUpload(String filename, String contentType, long size, String sha256) {
+        return Optional.empty();
+    }
+
+    /**
+     * Record an object the client has uploaded through a presigned URL, like {@link #recordUploads}.
+     * Returns the final key of the object.
+     */
+    default String completePresignedUpload(String key) throws IOException {
+        throw new UnsupportedOperationException("Direct uploads are not supported by " + getStorageType() + " storage");
+    }
+
+    /**
+     * A short-lived URL the client can download the object from directly, or empty when the object
+     * has to be served through this application
+     */
+    default Optional<URI> getPresignedDownloadUrl(String key) {
+        return Optional.empty();
+    }
+
     /**
      * Get object from storage by key
      */
     InputStream getObject(String key) throws IOException;
 
+    /**
+     * Get a byte range of an object from storage by key. The returned stream starts at
+     * {@code offset} and provides at least {@code length} bytes.
+     */
+    InputStream getObject(String key, long offset, long length) throws IOException;
+
+    /**
+     * Resolve the object to a file on the local file system, if the storage is file based.
+     * Callers can use the file to serve the object without copying it through the heap.
+     */
+    default Optional<Path> getLocalFile(String key) {
+        return Optional.empty();
+    }
+
     /**
      * Delete object from storage by key
      */
-    void deleteObject(String key) throws IOException;
+    default void deleteObject(String key) throws IOException {
+        deleteObjects(List.of(key));
+    }
+
+    /**
+     * Delete a batch of objects from storage, along with their thumbnails and metadata
+     */
+    void deleteObjects(Collection<String> keys) throws IOException;
 
     /**
      * Get the storage type (s3 or local)
@@ -48,4 +152,22 @@ public interface StorageService {
         }
         return key + "_thumbnail";
     }
-}
\ No newline at end of file
+
+    /**
+     * Get the keys of the renditions stored for the given keys, whatever names and formats the
+     * worker wrote them with
+     */
+    Set<String> getRenditionKeys(Collection<String> keys);
+
+    private static <T> CompletableFuture<T> onVirtualThread(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Thread.ofVirtual().start(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
@@ -1,12 +1,22 @@
 package com.microsoft.migration.assets.worker.config;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+import java.net.URI;
+import java.time.Duration;
 
 @Configuration
 public class AwsS3Config {
@@ -19,12 +29,65 @@ public class AwsS3Config {
     @Value("${aws.region}")
     private String region;
 
+    // Optional endpoint of an S3-compatible store such as MinIO, which usually also needs path-style access
+    @Value("${aws.s3.endpoint:}")
+    private String endpoint;
+
+    @Value("${aws.s3.path-style-access:false}")
+    private boolean pathStyleAccess;
+
+    // Connection pool of the blocking client; the SDK default of 50 is below our transfer concurrency
+    @Value("${aws.s3.http.max-connections:64}")
+    private int maxConnections;
+
+    @Value("${aws.s3.http.connection-acquisition-timeout:10s}")
+    private Duration connectionAcquisitionTimeout;
+
+    @Value("${aws.s3.async.max-concurrency:128}")
+    private int asyncMaxConcurrency;
+
+    @Value("${aws.s3.async.max-pending-connection-acquires:10000}")
+    private int asyncMaxPendingConnectionAcquires;
+
     @Bean
     public S3Client s3Client() {
-        AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(accessKeyId, secretKey);
-        return S3Client.builder()
+        S3ClientBuilder builder = S3Client.builder()
                 .region(Region.of(region))
-                .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
-                .build();
+                .credentialsProvider(credentialsProvider())
+                .forcePathStyle(pathStyleAccess)
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(maxConnections)
+                        .connectionAcquisitionTimeout(connectionAcquisitionTimeout)
+                        .tcpKeepAlive(true));
+        if (StringUtils.hasText(endpoint)) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Non-blocking client that holds no thread while a transfer waits on S3, multiplexing up to
+     * max-concurrency connections on a few event loop threads. Opt-in; without it the asynchronous
+     * storage operations run the blocking client on virtual threads.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "aws.s3.async.enabled", havingValue = "true")
+    public S3AsyncClient s3AsyncClient() {
+        S3AsyncClientBuilder builder = S3AsyncClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentialsProvider())
+                .forcePathStyle(pathStyleAccess)
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(asyncMaxConcurrency)
+                        .maxPendingConnectionAcquires(asyncMaxPendingConnectionAcquires)
+                        .connectionAcquisitionTimeout(connectionAcquisitionTimeout));
+        if (StringUtils.hasText(endpoint)) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return builder.build();
+    }
+
+    private StaticCredentialsProvider credentialsProvider() {
+        return StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKeyId, secretKey));
     }
 }
\ No newline at end of file
@@ -1,28 +1,73 @@
 package com.microsoft.migration.assets.worker.config;
 
+import com.microsoft.migration.assets.worker.service.FileProcessor;
 import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.ExchangeBuilder;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.QueueBuilder;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.retry.backoff.FixedBackOffPolicy;
-import org.springframework.retry.policy.SimpleRetryPolicy;
-import org.springframework.retry.support.RetryTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
 public class RabbitConfig {
-    public static final String QUEUE_NAME = "image-processing";
-    public static final int RETRY_DELAY_MS = 60000; // 1 minute delay
-    public static final int MAX_ATTEMPTS = 3; // Maximum number of retry attempts
+    // Messages are routed by storage type; each worker binds a queue for its own type only
+    public static final String EXCHANGE_NAME = "image-processing";
+    // Retries are dead-lettered through their own exchange so they never reach queues bound to the
+    // publish exchange, such as the web app's backup queue
+    public static final String RETRY_EXCHANGE_NAME = "image-processing.retry";
+    public static final String QUEUE_PREFIX = "image-processing.";
+    public static final String RETRY_COUNT_HEADER = "x-retry-count";
+    public static final int RETRY_BASE_DELAY_MS = 15000; // Delay before the first retry
+    public static final int RETRY_BACKOFF_MULTIPLIER = 4; // Delay growth per attempt: 15s, 1m, 4m
+    public static final int MAX_ATTEMPTS = 3; // Maximum number of retry attempts before parking
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16; // Messages processed concurrently by the pipeline
+    public static final int DEFAULT_BATCH_SIZE = 8; // Messages handed to the listener at once
+
+    @Value("${worker.pipeline.max-in-flight:" + DEFAULT_MAX_IN_FLIGHT + "}")
+    private int maxInFlight;
+
+    @Value("${worker.pipeline.batch-size:" + DEFAULT_BATCH_SIZE + "}")
+    private int batchSize;
+
+    @Bean
+    public DirectExchange imageProcessingExchange() {
+        return ExchangeBuilder.directExchange(EXCHANGE_NAME).durable(true).build();
+    }
+
+    @Bean
+    public Queue imageProcessingQueue(FileProcessor fileProcessor) {
+        return QueueBuilder.durable(queueName(fileProcessor.getStorageType())).build();
+    }
+
+    @Bean
+    public Binding imageProcessingBinding(Queue imageProcessingQueue, DirectExchange imageProcessingExchange,
+                                          FileProcessor fileProcessor) {
+        return BindingBuilder.bind(imageProcessingQueue).to(imageProcessingExchange).with(fileProcessor.getStorageType());
+    }
+
+    @Bean
+    public DirectExchange retryExchange() {
+        return ExchangeBuilder.directExchange(RETRY_EXCHANGE_NAME).durable(true).build();
+    }
 
     @Bean
-    public Queue imageProcessingQueue() {
-        return QueueBuilder.durable(QUEUE_NAME).build();
+    public Binding retryBinding(Queue imageProcessingQueue, DirectExchange retryExchange,
+                                FileProcessor fileProcessor) {
+        return BindingBuilder.bind(imageProcessingQueue).to(retryExchange).with(fileProcessor.getStorageType());
     }
 
     @Bean
@@ -38,24 +83,63 @@ public class RabbitConfig {
         configurer.configure(factory, connectionFactory);
         factory.setMessageConverter(jsonMessageConverter());
         factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        // Deliver messages in batches; a batch is released when full or after the receive timeout
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        // A listener settles its whole batch before taking the next, so run enough consumers to keep
+        // max-in-flight messages in the pipeline; a slow original then only holds back its own batch
+        int consumers = Math.max(1, (maxInFlight + batchSize - 1) / batchSize);
+        factory.setConcurrentConsumers(consumers);
+        factory.setMaxConcurrentConsumers(consumers);
+        // Each consumer prefetches exactly one batch
+        factory.setPrefetchCount(batchSize);
         return factory;
     }
     
+    /**
+     * One delay queue per retry attempt. Failed messages wait in the queue for its TTL and are then
+     * dead-lettered through the retry exchange with this worker's storage type, so no consumer thread
+     * is held during the back-off and the retry reaches the same kind of worker without being
+     * delivered again to anything else bound to the publish exchange.
+     */
     @Bean
-    public RetryTemplate retryTemplate() {
-        RetryTemplate retryTemplate = new RetryTemplate();
-        
-        // Configure retry policy (number of attempts)
-        SimpleRetryPolicy retryPolicy = new SimpleRetryPolicy();
-        retryPolicy.setMaxAttempts(MAX_ATTEMPTS);
-        retryTemplate.setRetryPolicy(retryPolicy);
-        
-        // Configure backoff policy (delay between retries)
-        FixedBackOffPolicy backOffPolicy = new FixedBackOffPolicy();
-        backOffPolicy.setBackOffPeriod(RETRY_DELAY_MS);
-        retryTemplate.setBackOffPolicy(backOffPolicy);
-        
-        return retryTemplate;
+    public Declarables retryQueues(FileProcessor fileProcessor) {
+        String storageType = fileProcessor.getStorageType();
+        List<Declarable> queues = new ArrayList<>();
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            queues.add(QueueBuilder.durable(retryQueueName(storageType, attempt))
+                    .ttl(retryDelayMs(attempt))
+                    .deadLetterExchange(RETRY_EXCHANGE_NAME)
+                    .deadLetterRoutingKey(storageType)
+                    .build());
+        }
+        return new Declarables(queues);
+    }
+
+    @Bean
+    public Queue parkingLotQueue(FileProcessor fileProcessor) {
+        return QueueBuilder.durable(parkingLotQueueName(fileProcessor.getStorageType())).build();
+    }
+
+    public static String queueName(String storageType) {
+        return QUEUE_PREFIX + storageType;
+    }
+
+    public static String retryQueueName(String storageType, int attempt) {
+        return queueName(storageType) + ".retry." + attempt;
+    }
+
+    public static String parkingLotQueueName(String storageType) {
+        return queueName(storageType) + ".parking-lot";
+    }
+
+    public static int retryDelayMs(int attempt) {
+        int delay = RETRY_BASE_DELAY_MS;
+        for (int i = 1; i < attempt; i++) {
+            delay *= RETRY_BACKOFF_MULTIPLIER;
+        }
+        return delay;
     }
 
 }
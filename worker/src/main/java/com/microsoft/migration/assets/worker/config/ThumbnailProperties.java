@@ -0,0 +1,36 @@
+package com.microsoft.migration.assets.worker.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The set of renditions generated for every uploaded image, configured under {@code worker.thumbnail}.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "worker.thumbnail")
+public class ThumbnailProperties {
+
+    // The 600px rendition keeps the name "thumbnail" so it is stored under the legacy thumbnail key
+    private List<Rendition> renditions = new ArrayList<>(List.of(
+            new Rendition("grid", 150, null, 0.85f),
+            new Rendition("thumbnail", 600, null, 0.95f),
+            new Rendition("lightbox", 1600, null, 0.9f)
+    ));
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Rendition {
+        private String name;
+        private int maxDimension;
+        private String format; // e.g. "jpg" or "png"; null keeps the format of the original
+        private float quality = 0.95f; // JPEG compression quality
+    }
+}
@@ -1,15 +1,27 @@
 package com.microsoft.migration.assets.worker.model;
 
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.PreUpdate;
+import jakarta.persistence.Table;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_image_metadata_s3_key", columnList = "s3Key"),
+        @Index(name = "idx_image_metadata_content_hash", columnList = "contentHash", unique = true)
+})
 @Data
 @NoArgsConstructor
 public class ImageMetadata {
@@ -22,6 +34,19 @@ public class ImageMetadata {
     private String s3Url;
     private String thumbnailKey;
     private String thumbnailUrl;
+
+    // Hex SHA-256 of the original's bytes, used to deduplicate uploads of the same content
+    @Column(length = 64)
+    private String contentHash;
+
+    @Enumerated(EnumType.STRING)
+    private ProcessingStatus processingStatus;
+
+    // Rendition name (e.g. "grid", "thumbnail", "lightbox") to storage key
+    @Convert(converter = RenditionKeysConverter.class)
+    @Column(columnDefinition = "text")
+    private Map<String, String> renditions = new LinkedHashMap<>();
+
     private LocalDateTime uploadedAt;
     private LocalDateTime lastModified;
 
@@ -4,7 +4,21 @@ import com.microsoft.migration.assets.worker.model.ImageMetadata;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface ImageMetadataRepository extends JpaRepository<ImageMetadata, String> {
     // Basic CRUD operations are automatically provided by JpaRepository
+
+    /**
+     * Find the metadata for a single object key
+     */
+    Optional<ImageMetadata> findByS3Key(String s3Key);
+
+    /**
+     * Fetch the metadata for a batch of object keys in a single query
+     */
+    List<ImageMetadata> findAllByS3KeyIn(Collection<String> s3Keys);
 }
\ No newline at end of file
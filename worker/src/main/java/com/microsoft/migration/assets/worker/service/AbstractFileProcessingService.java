@@ -1,107 +1,452 @@
 package com.microsoft.migration.assets.worker.service;
 
+import com.microsoft.migration.assets.worker.config.ThumbnailProperties;
 import com.microsoft.migration.assets.worker.model.ImageProcessingMessage;
+import com.microsoft.migration.assets.worker.util.ByteBufferPool;
+import com.microsoft.migration.assets.worker.util.ImageResampler;
 import com.microsoft.migration.assets.worker.util.StorageUtil;
 import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.AmqpHeaders;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.handler.annotation.Header;
-import org.springframework.retry.RetryCallback;
-import org.springframework.retry.RetryContext;
-import org.springframework.retry.support.RetryTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.unit.DataSize;
 
 import javax.imageio.ImageIO;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-import static com.microsoft.migration.assets.worker.config.RabbitConfig.QUEUE_NAME;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.DEFAULT_MAX_IN_FLIGHT;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.MAX_ATTEMPTS;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.RETRY_COUNT_HEADER;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.parkingLotQueueName;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.queueName;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.retryDelayMs;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.retryQueueName;
 
 @Slf4j
 public abstract class AbstractFileProcessingService implements FileProcessor {
 
+    private static final int BUFFER_INITIAL_SIZE = 256 * 1024;
+    private static final int BUFFER_MAX_RETAINED_SIZE = 8 * 1024 * 1024;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
     @Autowired
-    private RetryTemplate retryTemplate;
+    private ThumbnailProperties thumbnailProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Jobs acknowledged without work because their renditions were already up to date
+    private Counter skippedJobs;
+
+    @Value("${worker.pipeline.max-in-flight:" + DEFAULT_MAX_IN_FLIGHT + "}")
+    private int maxInFlight;
+
+    @Value("${worker.pipeline.cpu-threads:0}")
+    private int cpuThreads;
+
+    // Download and upload stages are blocking I/O and run on virtual threads
+    private ExecutorService ioExecutor;
+
+    // Decode, resize and encode are CPU bound and run on a pool sized to the cores
+    private ExecutorService cpuExecutor;
+
+    // Caps the messages in the pipeline; the listener blocks here when it is full
+    private Semaphore inFlight;
+
+    @Value("${worker.processing.in-memory-max-size:32MB}")
+    private DataSize inMemoryMaxSize;
+
+    // Reusable buffers for originals and thumbnails processed in memory
+    private ByteBufferPool bufferPool;
+
+    @PostConstruct
+    public void initPipeline() {
+        int threads = cpuThreads > 0 ? cpuThreads : Runtime.getRuntime().availableProcessors();
+        ioExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        cpuExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxInFlight), new CustomizableThreadFactory("thumbnail-cpu-"));
+        inFlight = new Semaphore(maxInFlight);
+        skippedJobs = Counter.builder("worker.thumbnail.jobs.skipped")
+                .description("Thumbnail jobs skipped because the renditions already existed")
+                .register(meterRegistry);
+        if (thumbnailProperties.getRenditions().isEmpty()) {
+            throw new IllegalStateException("At least one rendition must be configured under worker.thumbnail.renditions");
+        }
+
+        // One buffer for the original plus one per rendition for every message in flight
+        int buffersPerMessage = 1 + thumbnailProperties.getRenditions().size();
+        bufferPool = new ByteBufferPool(buffersPerMessage * maxInFlight, BUFFER_INITIAL_SIZE, BUFFER_MAX_RETAINED_SIZE);
+        log.info("Thumbnail pipeline started with {} CPU threads and {} messages in flight", threads, maxInFlight);
+    }
+
+    @PreDestroy
+    public void shutdownPipeline() {
+        ioExecutor.shutdown();
+        cpuExecutor.shutdown();
+    }
+
+    /**
+     * The queue bound to this worker's storage type, resolved by the listener below
+     */
+    public String getQueueName() {
+        return queueName(getStorageType());
+    }
+
+    /**
+     * Consume a batch of messages, process them in parallel through the pipeline and record the
+     * renditions of the whole batch at once. Every message in the batch is settled (done, or moved
+     * to a retry queue) before the batch is acknowledged with a single multiple ack.
+     */
+    @RabbitListener(queues = "#{__listener.queueName}")
+    public void processImages(List<Message<ImageProcessingMessage>> messages, Channel channel) {
+        List<BatchItem> items = new ArrayList<>(messages.size());
+        for (Message<ImageProcessingMessage> message : messages) {
+            BatchItem item = new BatchItem(message);
+            if (item.attempt > 0) {
+                log.info("Retry attempt {} for image: {}", item.attempt, item.message.getKey());
+            }
+            items.add(item);
+        }
+
+        List<BatchItem> pending = skipProcessed(items);
+        submit(pending);
+        collect(pending);
+        acknowledge(items, channel);
+    }
+
+    /**
+     * Mark messages that need no work as done: other storage types, and originals whose renditions
+     * are already up to date, so redeliveries and replays are acknowledged without doing work
+     */
+    private List<BatchItem> skipProcessed(List<BatchItem> items) {
+        Map<String, Map<String, String>> renditionKeysByKey = new LinkedHashMap<>();
+        for (BatchItem item : items) {
+            // Routing delivers only our storage type; guard against messages published to the wrong queue by hand
+            if (!item.message.getStorageType().equals(getStorageType())) {
+                log.warn("Skipping message with storage type: {} (we handle {})",
+                    item.message.getStorageType(), getStorageType());
+                item.outcome = Outcome.DONE;
+                continue;
+            }
+            item.targets = getRenditionTargets(item.message);
+            renditionKeysByKey.put(item.message.getKey(), getRenditionKeys(item.targets));
+        }
+
+        Set<String> processed = Set.of();
+        if (!renditionKeysByKey.isEmpty()) {
+            try {
+                processed = findProcessed(renditionKeysByKey);
+            } catch (Exception e) {
+                log.warn("Could not check processing state, processing the whole batch", e);
+            }
+        }
+
+        List<BatchItem> pending = new ArrayList<>();
+        for (BatchItem item : items) {
+            if (item.outcome != null) {
+                continue;
+            }
+            if (processed.contains(item.message.getKey())) {
+                log.info("Renditions for {} are already up to date, skipping", item.message.getKey());
+                skippedJobs.increment();
+                item.outcome = Outcome.DONE;
+            } else {
+                pending.add(item);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Hand each message to the pipeline; blocks when the pipeline is full
+     */
+    private void submit(List<BatchItem> pending) {
+        for (BatchItem item : pending) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pending.stream().filter(other -> other.result == null).forEach(other -> other.outcome = Outcome.REQUEUE);
+                return;
+            }
+            item.result = CompletableFuture.supplyAsync(() -> processImage(item.message, item.targets), ioExecutor);
+            item.result.whenComplete((renditionKeys, error) -> inFlight.release());
+        }
+    }
 
-    @RabbitListener(queues = QUEUE_NAME)
-    public void processImage(final ImageProcessingMessage message, 
-                           Channel channel, 
-                           @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
+    /**
+     * Wait for the batch and record the renditions of every successful message in one write
+     */
+    private void collect(List<BatchItem> pending) {
+        Map<String, Map<String, String>> renditionKeysByKey = new LinkedHashMap<>();
+        List<BatchItem> succeeded = new ArrayList<>();
+        for (BatchItem item : pending) {
+            if (item.result == null) {
+                continue;
+            }
+            try {
+                renditionKeysByKey.put(item.message.getKey(), item.result.join());
+                succeeded.add(item);
+            } catch (CompletionException e) {
+                item.outcome = Outcome.FAILED;
+            }
+        }
+
+        if (succeeded.isEmpty()) {
+            return;
+        }
         try {
-            retryTemplate.execute(new RetryCallback<Void, Exception>() {
-                @Override
-                public Void doWithRetry(RetryContext context) throws Exception {
-                    if (context.getRetryCount() > 0) {
-                        log.info("Retry attempt {} for image: {}", context.getRetryCount(), message.getKey());
+            recordRenditions(renditionKeysByKey);
+            succeeded.forEach(item -> item.outcome = Outcome.DONE);
+        } catch (Exception e) {
+            log.error("Failed to record renditions for a batch of {} images", succeeded.size(), e);
+            succeeded.forEach(item -> item.outcome = Outcome.FAILED);
+        }
+    }
+
+    /**
+     * Move failed messages to their retry queue, then acknowledge the batch. When every message is
+     * settled a single multiple ack covers the whole batch; otherwise messages are settled one by one
+     * and the ones that could not be moved are requeued.
+     */
+    private void acknowledge(List<BatchItem> items, Channel channel) {
+        for (BatchItem item : items) {
+            if (item.outcome == Outcome.FAILED && !scheduleRetry(item)) {
+                item.outcome = Outcome.REQUEUE;
+            }
+        }
+
+        try {
+            if (items.stream().noneMatch(item -> item.outcome == Outcome.REQUEUE)) {
+                long lastTag = items.stream().mapToLong(item -> item.deliveryTag).max().orElseThrow();
+                log.debug("Acknowledging batch of {} messages", items.size());
+                channel.basicAck(lastTag, true);
+            } else {
+                for (BatchItem item : items) {
+                    if (item.outcome == Outcome.REQUEUE) {
+                        log.debug("Requeueing message: {}", item.message.getKey());
+                        channel.basicNack(item.deliveryTag, false, true);
+                    } else {
+                        channel.basicAck(item.deliveryTag, false);
                     }
-                    
-                    processImageWithRetry(message);
-                    return null;
                 }
-            });
-            
-            // Success - acknowledge the message
-            log.debug("Acknowledging message after successful processing: {}", message.getKey());
-            channel.basicAck(deliveryTag, false);
-        } catch (Exception e) {
-            log.error("All retry attempts failed for image: " + message.getKey(), e);
-            
-            try {
-                // After all retries are exhausted, reject the message
-                // to retry later, use basicNack with requeue=true
-                log.debug("Rejecting message after all retry attempts failed: {}", message.getKey());
-                channel.basicNack(deliveryTag, false, true);
-            } catch (IOException ackEx) {
-                log.error("Error handling RabbitMQ acknowledgment for: {}", message.getKey(), ackEx);
+            }
+        } catch (IOException ackEx) {
+            log.error("Error handling RabbitMQ acknowledgment for a batch of {} messages", items.size(), ackEx);
+            return;
+        }
+
+        for (BatchItem item : items) {
+            if (item.outcome == Outcome.FAILED && item.attempt + 1 > MAX_ATTEMPTS) {
+                try {
+                    recordFailure(item.message.getKey());
+                } catch (Exception e) {
+                    log.error("Failed to record processing failure for: {}", item.message.getKey(), e);
+                }
             }
         }
     }
-    
-    private void processImageWithRetry(ImageProcessingMessage message) {
-        Path tempDir = null;
-        Path originalFile = null;
-        Path thumbnailFile = null;
 
+    /**
+     * Move a failed message to the delay queue for its next attempt, or to the parking lot once
+     * all attempts are used up. Returns false if the message could not be moved.
+     */
+    private boolean scheduleRetry(BatchItem item) {
+        ImageProcessingMessage message = item.message;
+        int nextAttempt = item.attempt + 1;
+        String targetQueue = nextAttempt <= MAX_ATTEMPTS
+                ? retryQueueName(getStorageType(), nextAttempt)
+                : parkingLotQueueName(getStorageType());
         try {
-            log.info("Processing image: {}", message.getKey());
+            rabbitTemplate.convertAndSend("", targetQueue, message, amqpMessage -> {
+                amqpMessage.getMessageProperties().setHeader(RETRY_COUNT_HEADER, nextAttempt);
+                return amqpMessage;
+            });
+            if (nextAttempt <= MAX_ATTEMPTS) {
+                log.warn("Scheduled retry {} of {} for image {} in {} ms",
+                        nextAttempt, MAX_ATTEMPTS, message.getKey(), retryDelayMs(nextAttempt));
+            } else {
+                log.error("All retry attempts failed for image {}, moved to {}", message.getKey(), targetQueue);
+            }
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to schedule retry for: {}", message.getKey(), e);
+            return false;
+        }
+    }
 
-            tempDir = Files.createTempDirectory("image-processing");
-            originalFile = tempDir.resolve("original" + StorageUtil.getExtension(message.getKey()));
-            thumbnailFile = tempDir.resolve("thumbnail" + StorageUtil.getExtension(message.getKey()));
+    private enum Outcome {
+        DONE,
+        FAILED,
+        REQUEUE
+    }
 
-            // Only process if message matches our storage type
-            if (message.getStorageType().equals(getStorageType())) {
-                // Download original file
-                downloadOriginal(message.getKey(), originalFile);
+    /**
+     * One message of a batch and its progress through the pipeline
+     */
+    private static final class BatchItem {
+        final ImageProcessingMessage message;
+        final long deliveryTag;
+        final int attempt;
+        List<RenditionTarget> targets;
+        CompletableFuture<Map<String, String>> result;
+        Outcome outcome;
 
-                // Generate thumbnail
-                generateThumbnail(originalFile, thumbnailFile);
+        BatchItem(Message<ImageProcessingMessage> message) {
+            this.message = message.getPayload();
+            this.deliveryTag = message.getHeaders().get(AmqpHeaders.DELIVERY_TAG, Long.class);
+            Object retryCount = message.getHeaders().get(RETRY_COUNT_HEADER);
+            this.attempt = retryCount instanceof Number number ? number.intValue() : 0;
+        }
+    }
 
-                // Upload thumbnail
-                String thumbnailKey = StorageUtil.getThumbnailKey(message.getKey());
-                uploadThumbnail(thumbnailFile, thumbnailKey, message.getContentType());
+    /**
+     * Generate and upload the renditions of one original, returning their keys by rendition name
+     */
+    private Map<String, String> processImage(ImageProcessingMessage message, List<RenditionTarget> targets) {
+        try {
+            log.info("Processing image: {}", message.getKey());
 
-                log.info("Successfully processed image: {}", message.getKey());
+            if (message.getSize() > 0 && message.getSize() <= inMemoryMaxSize.toBytes()) {
+                processInMemory(message, targets);
             } else {
-                log.debug("Skipping message with storage type: {} (we handle {})",
-                    message.getStorageType(), getStorageType());
+                processWithTempFiles(message, targets);
             }
+
+            log.info("Successfully processed image: {}", message.getKey());
+            return getRenditionKeys(targets);
         } catch (Exception e) {
             log.error("Failed to process image: " + message.getKey(), e);
             throw new RuntimeException("Failed to process image: " + message.getKey(), e);
+        }
+    }
+
+    private Map<String, String> getRenditionKeys(List<RenditionTarget> targets) {
+        Map<String, String> renditionKeys = new LinkedHashMap<>();
+        targets.forEach(target -> renditionKeys.put(target.rendition().getName(), target.key()));
+        return renditionKeys;
+    }
+
+    /**
+     * Process an image entirely in pooled memory buffers: the original is read straight from
+     * storage into a buffer, decoded once and encoded into one buffer per rendition on the CPU
+     * pool, and the renditions are uploaded from their buffers concurrently. No temporary files
+     * are written.
+     */
+    private void processInMemory(ImageProcessingMessage message, List<RenditionTarget> targets) throws Exception {
+        ByteBufferPool.Buffer original = bufferPool.acquire();
+        Map<RenditionTarget, ByteBufferPool.Buffer> renditionBuffers = new LinkedHashMap<>();
+        try {
+            targets.forEach(target -> renditionBuffers.put(target, bufferPool.acquire()));
+
+            // Download original into memory
+            await(readOriginalAsync(message.getKey(), original));
+
+            // Generate renditions on the CPU pool
+            runOnCpuPool(() -> {
+                try (ImageInputStream input = new MemoryCacheImageInputStream(original.toInputStream())) {
+                    generateRenditions(input, message.getKey(), targets,
+                            target -> new MemoryCacheImageOutputStream(renditionBuffers.get(target)));
+                }
+                return null;
+            });
+
+            // Upload the renditions concurrently; their keys are recorded for the whole batch afterwards
+            List<CompletableFuture<Void>> uploads = new ArrayList<>();
+            for (Map.Entry<RenditionTarget, ByteBufferPool.Buffer> entry : renditionBuffers.entrySet()) {
+                RenditionTarget target = entry.getKey();
+                uploads.add(uploadThumbnailAsync(entry.getValue(), target.key(), target.contentType()));
+            }
+            await(CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new)));
+        } finally {
+            bufferPool.release(original);
+            renditionBuffers.values().forEach(bufferPool::release);
+        }
+    }
+
+    /**
+     * Process an image through temporary files, used for originals above the in-memory threshold
+     */
+    private void processWithTempFiles(ImageProcessingMessage message, List<RenditionTarget> targets) throws Exception {
+        Path tempDir = null;
+        Path originalFile = null;
+        Map<RenditionTarget, Path> renditionFiles = new LinkedHashMap<>();
+
+        try {
+            tempDir = Files.createTempDirectory("image-processing");
+            originalFile = tempDir.resolve("original" + StorageUtil.getExtension(message.getKey()));
+            for (RenditionTarget target : targets) {
+                renditionFiles.put(target, tempDir.resolve(target.rendition().getName() + "." + target.format()));
+            }
+
+            // Download original file
+            await(downloadOriginalAsync(message.getKey(), originalFile));
+
+            // Generate renditions on the CPU pool
+            Path input = originalFile;
+            runOnCpuPool(() -> {
+                try (ImageInputStream inputStream = ImageIO.createImageInputStream(input.toFile())) {
+                    if (inputStream == null) {
+                        throw new IOException("Could not read image file: " + input);
+                    }
+                    generateRenditions(inputStream, message.getKey(), targets,
+                            target -> ImageIO.createImageOutputStream(renditionFiles.get(target).toFile()));
+                }
+                return null;
+            });
+
+            // Upload the renditions concurrently; their keys are recorded for the whole batch afterwards
+            List<CompletableFuture<Void>> uploads = new ArrayList<>();
+            for (Map.Entry<RenditionTarget, Path> entry : renditionFiles.entrySet()) {
+                RenditionTarget target = entry.getKey();
+                uploads.add(uploadThumbnailAsync(entry.getValue(), target.key(), target.contentType()));
+            }
+            await(CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new)));
         } finally {
             try {
                 // Cleanup temporary files
                 if (originalFile != null) {
                     Files.deleteIfExists(originalFile);
                 }
-                if (thumbnailFile != null) {
-                    Files.deleteIfExists(thumbnailFile);
+                for (Path renditionFile : renditionFiles.values()) {
+                    Files.deleteIfExists(renditionFile);
                 }
                 if (tempDir != null) {
                     Files.deleteIfExists(tempDir);
@@ -112,67 +457,156 @@ public abstract class AbstractFileProcessingService implements FileProcessor {
         }
     }
 
+    private void runOnCpuPool(Callable<?> task) throws Exception {
+        try {
+            cpuExecutor.submit(task).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for an asynchronous transfer, rethrowing its failure as is
+     */
+    private static void await(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
     protected abstract String generateUrl(String key);
 
-    protected void generateThumbnail(Path input, Path output) throws IOException {
-        log.info("Generating thumbnail for: {}", input);
+    /**
+     * A configured rendition resolved against one original: its storage key, output format and content type
+     */
+    protected record RenditionTarget(ThumbnailProperties.Rendition rendition, String key, String format, String contentType) {
+    }
 
-        // Read the original image
-        BufferedImage originalImage = ImageIO.read(input.toFile());
-        if (originalImage == null) {
-            throw new IOException("Could not read image file: " + input);
-        }
+    /**
+     * Opens the output stream a rendition is encoded into
+     */
+    @FunctionalInterface
+    protected interface RenditionOutputs {
+        ImageOutputStream open(RenditionTarget target) throws IOException;
+    }
 
-        int originalWidth = originalImage.getWidth();
-        int originalHeight = originalImage.getHeight();
+    private List<RenditionTarget> getRenditionTargets(ImageProcessingMessage message) {
+        List<RenditionTarget> targets = new ArrayList<>();
+        for (ThumbnailProperties.Rendition rendition : thumbnailProperties.getRenditions()) {
+            String key = StorageUtil.getRenditionKey(message.getKey(), rendition.getName(), rendition.getFormat());
 
-        // Calculate thumbnail dimensions while preserving aspect ratio
-        // Increased size significantly for better clarity (600px max dimension)
-        int maxDimension = 600;
-        int thumbnailWidth, thumbnailHeight;
-        
-        double aspectRatio = (double) originalWidth / originalHeight;
+            // Determine the output format based on the file extension
+            String format = StorageUtil.getExtension(key);
+            if (format.startsWith(".")) {
+                format = format.substring(1);
+            }
+            if (format.isEmpty()) {
+                format = "jpg"; // Default to jpg if no extension found
+            }
 
-        if (originalWidth > originalHeight) {
-            thumbnailWidth = maxDimension;
-            thumbnailHeight = (int) (maxDimension / aspectRatio);
-        } else {
-            thumbnailHeight = maxDimension;
-            thumbnailWidth = (int) (maxDimension * aspectRatio);
+            String contentType = rendition.getFormat() != null && !rendition.getFormat().isEmpty()
+                    ? getContentType(format)
+                    : message.getContentType();
+            targets.add(new RenditionTarget(rendition, key, format, contentType));
         }
 
-        // Multi-step scaling for higher quality
-        // This progressive scaling produces better results than single-step scaling
-        BufferedImage resultImage = progressiveScaling(originalImage, thumbnailWidth, thumbnailHeight);
+        // Largest first, so each rendition is scaled down from the previous one
+        targets.sort(Comparator.comparingInt((RenditionTarget target) -> target.rendition().getMaxDimension()).reversed());
+        return targets;
+    }
 
-        // Sharpen the image to enhance details
-        resultImage = sharpenImage(resultImage);
+    private String getContentType(String format) {
+        if (format.equalsIgnoreCase("jpg") || format.equalsIgnoreCase("jpeg")) {
+            return "image/jpeg";
+        }
+        return "image/" + format.toLowerCase();
+    }
 
-        // Determine the output format based on the file extension
-        String extension = StorageUtil.getExtension(output.toString());
-        if (extension.startsWith(".")) {
-            extension = extension.substring(1);
+    /**
+     * Decode the original once and produce every rendition from it. Renditions must be ordered
+     * largest first: each one is cascaded down from the previous, unsharpened, result.
+     */
+    protected void generateRenditions(ImageInputStream input, String sourceName, List<RenditionTarget> targets,
+                                      RenditionOutputs outputs) throws IOException {
+        log.info("Generating {} renditions for: {}", targets.size(), sourceName);
+
+        ImageReader reader = getImageReader(input, sourceName);
+        try {
+            // Read the dimensions from the image header before decoding any pixels
+            int originalWidth = reader.getWidth(0);
+            int originalHeight = reader.getHeight(0);
+
+            // Decode huge originals subsampled to about twice the largest rendition, so the full-resolution
+            // raster is never allocated; the resampler below then does the fine downscale
+            int largestDimension = targets.get(0).rendition().getMaxDimension();
+            ImageReadParam readParam = reader.getDefaultReadParam();
+            int subsampling = Math.max(1, Math.max(originalWidth, originalHeight) / (2 * largestDimension));
+            if (subsampling > 1) {
+                log.debug("Decoding {}x{} image with subsampling {}", originalWidth, originalHeight, subsampling);
+                readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            }
+            BufferedImage currentImage = reader.read(0, readParam);
+
+            double aspectRatio = (double) originalWidth / originalHeight;
+            for (int i = 0; i < targets.size(); i++) {
+                RenditionTarget target = targets.get(i);
+                // Calculate rendition dimensions while preserving aspect ratio
+                int maxDimension = target.rendition().getMaxDimension();
+                int renditionWidth, renditionHeight;
+                if (originalWidth > originalHeight) {
+                    renditionWidth = maxDimension;
+                    renditionHeight = (int) (maxDimension / aspectRatio);
+                } else {
+                    renditionHeight = maxDimension;
+                    renditionWidth = (int) (maxDimension * aspectRatio);
+                }
+
+                // Single Lanczos pass with the sharpening applied as the pixels are written; the
+                // unsharpened result is only kept when a smaller rendition cascades down from it
+                boolean cascade = i < targets.size() - 1;
+                ImageResampler.Result result = ImageResampler.resize(currentImage, renditionWidth, renditionHeight, cascade);
+
+                try (ImageOutputStream output = outputs.open(target)) {
+                    writeImage(result.image(), target.format(), target.rendition().getQuality(), output);
+                }
+                currentImage = result.unsharpened();
+            }
+        } finally {
+            reader.dispose();
         }
-        if (extension.isEmpty()) {
-            extension = "jpg"; // Default to jpg if no extension found
+    }
+
+    private ImageReader getImageReader(ImageInputStream input, String name) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Could not read image: " + name);
         }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
 
-        // Write the thumbnail with optimized settings for different formats
+    private void writeImage(BufferedImage resultImage, String extension, float quality, ImageOutputStream output) throws IOException {
+        // Write the image with optimized settings for different formats
         if (extension.equalsIgnoreCase("jpg") || extension.equalsIgnoreCase("jpeg")) {
             // For JPEG, we need to set compression quality
             javax.imageio.ImageWriter jpgWriter = javax.imageio.ImageIO.getImageWritersByFormatName("jpg").next();
             javax.imageio.ImageWriteParam jpgWriteParam = jpgWriter.getDefaultWriteParam();
             jpgWriteParam.setCompressionMode(javax.imageio.ImageWriteParam.MODE_EXPLICIT);
-            // Higher compression quality (0.95 for maximum clarity)
-            jpgWriteParam.setCompressionQuality(0.95f);
+            jpgWriteParam.setCompressionQuality(quality);
             
             javax.imageio.IIOImage outputImage = new javax.imageio.IIOImage(resultImage, null, null);
-            javax.imageio.stream.ImageOutputStream outputStream = 
-                javax.imageio.ImageIO.createImageOutputStream(output.toFile());
-            jpgWriter.setOutput(outputStream);
+            jpgWriter.setOutput(output);
             jpgWriter.write(null, outputImage, jpgWriteParam);
             jpgWriter.dispose();
-            outputStream.close();
         } else {
             // For PNG, use compression level 0 (no compression) for best quality
             javax.imageio.ImageWriteParam pngWriteParam = null;
@@ -185,114 +619,16 @@ public abstract class AbstractFileProcessingService implements FileProcessor {
                     pngWriteParam.setCompressionQuality(0.0f); // 0 = best quality for PNG
                     
                     javax.imageio.IIOImage outputImage = new javax.imageio.IIOImage(resultImage, null, null);
-                    javax.imageio.stream.ImageOutputStream outputStream = 
-                        javax.imageio.ImageIO.createImageOutputStream(output.toFile());
-                    pngWriter.setOutput(outputStream);
+                    pngWriter.setOutput(output);
                     pngWriter.write(null, outputImage, pngWriteParam);
                     pngWriter.dispose();
-                    outputStream.close();
                 } else {
-                    ImageIO.write(resultImage, extension, output.toFile());
+                    ImageIO.write(resultImage, extension, output);
                 }
             } else {
                 // For other formats, use regular write method
-                ImageIO.write(resultImage, extension, output.toFile());
+                ImageIO.write(resultImage, extension, output);
             }
         }
-
-        log.info("Successfully generated thumbnail: {}", output);
-    }
-    
-    /**
-     * Performs progressive scaling of the image for better quality.
-     * This method gradually scales down the image in multiple steps rather than all at once.
-     */
-    private BufferedImage progressiveScaling(BufferedImage source, int targetWidth, int targetHeight) {
-        // Current dimensions
-        int currentWidth = source.getWidth();
-        int currentHeight = source.getHeight();
-        
-        // Don't scale up images that are already smaller than target size
-        if (currentWidth <= targetWidth && currentHeight <= targetHeight) {
-            return source;
-        }
-        
-        // Use a multi-step approach for higher quality
-        BufferedImage result = source;
-        
-        // Scale down in multiple steps for better quality (not more than 50% each step)
-        while (currentWidth > targetWidth * 1.5 || currentHeight > targetHeight * 1.5) {
-            int newWidth = Math.max(currentWidth / 2, targetWidth);
-            int newHeight = Math.max(currentHeight / 2, targetHeight);
-            
-            result = scaleImage(result, newWidth, newHeight);
-            
-            currentWidth = newWidth;
-            currentHeight = newHeight;
-        }
-        
-        // Final scaling to exact target dimensions
-        if (currentWidth != targetWidth || currentHeight != targetHeight) {
-            result = scaleImage(result, targetWidth, targetHeight);
-        }
-        
-        return result;
-    }
-    
-    /**
-     * Scale an image to specific dimensions using high quality settings.
-     */
-    private BufferedImage scaleImage(BufferedImage source, int width, int height) {
-        // Create a new BufferedImage for the result
-        BufferedImage result;
-        
-        // Preserve transparency for images with alpha channel
-        if (source.getTransparency() != BufferedImage.OPAQUE) {
-            result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        } else {
-            result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        }
-        
-        // Set up the rendering process with maximum quality settings
-        Graphics2D g2d = result.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-        g2d.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
-        g2d.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-        g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
-        
-        // Draw the scaled image
-        g2d.drawImage(source, 0, 0, width, height, null);
-        g2d.dispose();
-        
-        return result;
-    }
-    
-    /**
-     * Apply a sharpening filter to enhance image clarity
-     */
-    private BufferedImage sharpenImage(BufferedImage image) {
-        float[] sharpenMatrix = {
-            0, -0.2f, 0,
-            -0.2f, 1.8f, -0.2f,
-            0, -0.2f, 0
-        };
-        
-        java.awt.image.Kernel kernel = new java.awt.image.Kernel(3, 3, sharpenMatrix);
-        java.awt.image.ConvolveOp convolveOp = new java.awt.image.ConvolveOp(
-            kernel, java.awt.image.ConvolveOp.EDGE_NO_OP, null);
-        
-        // Create a compatible destination image to avoid potential issues with some image types
-        BufferedImage output;
-        if (image.getTransparency() != BufferedImage.OPAQUE) {
-            output = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        } else {
-            output = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB); 
-        }
-        
-        // Apply the filter
-        return convolveOp.filter(image, output);
     }
 }
@@ -1,9 +1,73 @@
 package com.microsoft.migration.assets.worker.service;
 
+import com.microsoft.migration.assets.worker.util.ByteBufferPool;
+
+import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 public interface FileProcessor {
     void downloadOriginal(String key, Path destination) throws Exception;
     void uploadThumbnail(Path source, String key, String contentType) throws Exception;
+
+    // Asynchronous variants of the file transfers; the defaults run the blocking calls on a virtual thread
+    default CompletableFuture<Void> downloadOriginalAsync(String key, Path destination) {
+        return onVirtualThread(() -> {
+            downloadOriginal(key, destination);
+            return null;
+        });
+    }
+
+    default CompletableFuture<Void> uploadThumbnailAsync(Path source, String key, String contentType) {
+        return onVirtualThread(() -> {
+            uploadThumbnail(source, key, contentType);
+            return null;
+        });
+    }
+
+    // In-memory variants used for images below the temp file threshold
+    InputStream openOriginal(String key) throws Exception;
+    void uploadThumbnail(InputStream source, long length, String key, String contentType) throws Exception;
+
+    default CompletableFuture<Void> readOriginalAsync(String key, ByteBufferPool.Buffer destination) {
+        return onVirtualThread(() -> {
+            try (InputStream inputStream = openOriginal(key)) {
+                inputStream.transferTo(destination);
+            }
+            return null;
+        });
+    }
+
+    default CompletableFuture<Void> uploadThumbnailAsync(ByteBufferPool.Buffer source, String key, String contentType) {
+        return onVirtualThread(() -> {
+            uploadThumbnail(source.toInputStream(), source.size(), key, contentType);
+            return null;
+        });
+    }
+
+    // Record the generated rendition keys (rendition name to key) for a batch of originals, keyed by original
+    void recordRenditions(Map<String, Map<String, String>> renditionKeysByKey) throws Exception;
+
+    // The originals of a batch that already have all the given renditions, so redelivered jobs can be skipped
+    Set<String> findProcessed(Map<String, Map<String, String>> renditionKeysByKey) throws Exception;
+
+    // Record that an original could not be processed after all attempts
+    void recordFailure(String key) throws Exception;
+
     String getStorageType();
-}
\ No newline at end of file
+
+    private static <T> CompletableFuture<T> onVirtualThread(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Thread.ofVirtual().start(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
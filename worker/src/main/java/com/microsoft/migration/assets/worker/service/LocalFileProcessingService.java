@@ -4,10 +4,15 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import jakarta.annotation.PostConstruct;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +54,61 @@ public class LocalFileProcessingService extends AbstractFileProcessingService {
         Files.copy(source, destinationPath, StandardCopyOption.REPLACE_EXISTING);
     }
 
+    @Override
+    public InputStream openOriginal(String key) throws Exception {
+        Path sourcePath = rootLocation.resolve(key);
+        if (!Files.exists(sourcePath)) {
+            throw new java.io.FileNotFoundException("File not found: " + sourcePath);
+        }
+        return Files.newInputStream(sourcePath);
+    }
+
+    @Override
+    public void uploadThumbnail(InputStream source, long length, String key, String contentType) throws Exception {
+        Path destinationPath = rootLocation.resolve(key);
+        Files.createDirectories(destinationPath.getParent());
+        Files.copy(source, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void recordRenditions(Map<String, Map<String, String>> renditionKeysByKey) throws Exception {
+        // Local storage keeps no metadata; renditions are found next to the original by key
+        logger.debug("Stored renditions for {} images", renditionKeysByKey.size());
+    }
+
+    @Override
+    public Set<String> findProcessed(Map<String, Map<String, String>> renditionKeysByKey) throws Exception {
+        Set<String> processed = new HashSet<>();
+        for (Map.Entry<String, Map<String, String>> entry : renditionKeysByKey.entrySet()) {
+            if (hasCurrentRenditions(entry.getKey(), entry.getValue())) {
+                processed.add(entry.getKey());
+            }
+        }
+        return processed;
+    }
+
+    private boolean hasCurrentRenditions(String key, Map<String, String> renditionKeys) throws Exception {
+        // Without metadata, a rendition is current if its file is at least as new as the original
+        Path sourcePath = rootLocation.resolve(key);
+        if (!Files.exists(sourcePath)) {
+            return false;
+        }
+        FileTime originalModified = Files.getLastModifiedTime(sourcePath);
+        for (String renditionKey : renditionKeys.values()) {
+            Path renditionPath = rootLocation.resolve(renditionKey);
+            if (!Files.exists(renditionPath)
+                    || Files.getLastModifiedTime(renditionPath).compareTo(originalModified) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void recordFailure(String key) throws Exception {
+        logger.warn("Giving up on renditions for {}", key);
+    }
+
     @Override
     public String getStorageType() {
         return "local";
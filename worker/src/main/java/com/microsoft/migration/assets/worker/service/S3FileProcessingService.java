@@ -1,27 +1,49 @@
 package com.microsoft.migration.assets.worker.service;
 
 import com.microsoft.migration.assets.worker.model.ImageMetadata;
+import com.microsoft.migration.assets.worker.model.ProcessingStatus;
 import com.microsoft.migration.assets.worker.repository.ImageMetadataRepository;
+import com.microsoft.migration.assets.worker.util.ByteBufferPool;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.core.FileTransformerConfiguration;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetUrlRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @Profile("!dev")
 @RequiredArgsConstructor
 public class S3FileProcessingService extends AbstractFileProcessingService {
+    private static final String THUMBNAIL_RENDITION = "thumbnail";
+
     private final S3Client s3Client;
+    private final ObjectProvider<S3AsyncClient> s3AsyncClient;
     private final ImageMetadataRepository imageMetadataRepository;
+    private final TransactionTemplate transactionTemplate;
     
     @Value("${aws.s3.bucket}")
     private String bucketName;
@@ -47,18 +69,150 @@ public class S3FileProcessingService extends AbstractFileProcessingService {
                 .build();
                 
         s3Client.putObject(request, RequestBody.fromFile(source));
-        
-        // Save or update thumbnail metadata
-        ImageMetadata metadata = imageMetadataRepository.findById(extractOriginalKey(key))
-            .orElseGet(() -> {
-                ImageMetadata newMetadata = new ImageMetadata();
-                newMetadata.setId(extractOriginalKey(key));
-                return newMetadata;
+    }
+
+    @Override
+    public CompletableFuture<Void> downloadOriginalAsync(String key, Path destination) {
+        S3AsyncClient asyncClient = s3AsyncClient.getIfAvailable();
+        if (asyncClient == null) {
+            return super.downloadOriginalAsync(key, destination);
+        }
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+
+        // Written straight to the file from the event loop, without a thread blocking on the socket
+        return asyncClient.getObject(request, AsyncResponseTransformer.toFile(destination,
+                        FileTransformerConfiguration.defaultCreateOrReplaceExisting()))
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> uploadThumbnailAsync(Path source, String key, String contentType) {
+        S3AsyncClient asyncClient = s3AsyncClient.getIfAvailable();
+        if (asyncClient == null) {
+            return super.uploadThumbnailAsync(source, key, contentType);
+        }
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .build();
+
+        return asyncClient.putObject(request, AsyncRequestBody.fromFile(source))
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> readOriginalAsync(String key, ByteBufferPool.Buffer destination) {
+        S3AsyncClient asyncClient = s3AsyncClient.getIfAvailable();
+        if (asyncClient == null) {
+            return super.readOriginalAsync(key, destination);
+        }
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+
+        // Chunks are appended to the pooled buffer as they arrive on the event loop
+        return asyncClient.getObject(request, AsyncResponseTransformer.toPublisher())
+                .thenCompose(response -> response.subscribe(destination::write));
+    }
+
+    @Override
+    public CompletableFuture<Void> uploadThumbnailAsync(ByteBufferPool.Buffer source, String key, String contentType) {
+        S3AsyncClient asyncClient = s3AsyncClient.getIfAvailable();
+        if (asyncClient == null) {
+            return super.uploadThumbnailAsync(source, key, contentType);
+        }
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .build();
+
+        // The buffer is only released once the upload has completed, so it is sent without a copy
+        return asyncClient.putObject(request, AsyncRequestBody.fromByteBufferUnsafe(source.toByteBuffer()))
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public InputStream openOriginal(String key) throws Exception {
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+
+        return s3Client.getObject(request);
+    }
+
+    @Override
+    public void uploadThumbnail(InputStream source, long length, String key, String contentType) throws Exception {
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .build();
+
+        s3Client.putObject(request, RequestBody.fromInputStream(source, length));
+    }
+
+    @Override
+    public void recordRenditions(Map<String, Map<String, String>> renditionKeysByKey) throws Exception {
+        // Update the rows the web module created for the originals with one query and one batched write
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<String, ImageMetadata> metadataByKey = findMetadata(renditionKeysByKey.keySet());
+
+            List<ImageMetadata> updated = new ArrayList<>(renditionKeysByKey.size());
+            renditionKeysByKey.forEach((key, renditionKeys) -> {
+                ImageMetadata metadata = metadataByKey.computeIfAbsent(key, missingKey -> {
+                    ImageMetadata newMetadata = new ImageMetadata();
+                    newMetadata.setId(missingKey);
+                    newMetadata.setS3Key(missingKey);
+                    return newMetadata;
+                });
+
+                String thumbnailKey = renditionKeys.getOrDefault(THUMBNAIL_RENDITION, renditionKeys.values().iterator().next());
+                metadata.setThumbnailKey(thumbnailKey);
+                metadata.setThumbnailUrl(generateUrl(thumbnailKey));
+                metadata.setRenditions(new LinkedHashMap<>(renditionKeys));
+                metadata.setProcessingStatus(ProcessingStatus.COMPLETED);
+                updated.add(metadata);
             });
+            imageMetadataRepository.saveAll(updated);
+        });
+    }
+
+    @Override
+    public Set<String> findProcessed(Map<String, Map<String, String>> renditionKeysByKey) throws Exception {
+        Map<String, ImageMetadata> metadataByKey = findMetadata(renditionKeysByKey.keySet());
+        Set<String> processed = new HashSet<>();
+        renditionKeysByKey.forEach((key, renditionKeys) -> {
+            ImageMetadata metadata = metadataByKey.get(key);
+            if (metadata != null
+                    && metadata.getProcessingStatus() == ProcessingStatus.COMPLETED
+                    && metadata.getRenditions().entrySet().containsAll(renditionKeys.entrySet())) {
+                processed.add(key);
+            }
+        });
+        return processed;
+    }
 
-        metadata.setThumbnailKey(key);
-        metadata.setThumbnailUrl(generateUrl(key));
-        imageMetadataRepository.save(metadata);
+    private Map<String, ImageMetadata> findMetadata(Collection<String> keys) {
+        Map<String, ImageMetadata> metadataByKey = new HashMap<>();
+        for (ImageMetadata metadata : imageMetadataRepository.findAllByS3KeyIn(keys)) {
+            metadataByKey.putIfAbsent(metadata.getS3Key(), metadata);
+        }
+        return metadataByKey;
+    }
+
+    @Override
+    public void recordFailure(String key) throws Exception {
+        imageMetadataRepository.findByS3Key(key).ifPresent(metadata -> {
+            metadata.setProcessingStatus(ProcessingStatus.FAILED);
+            imageMetadataRepository.save(metadata);
+        });
     }
 
     @Override
@@ -74,14 +228,4 @@ public class S3FileProcessingService extends AbstractFileProcessingService {
                 .build();
         return s3Client.utilities().getUrl(request).toString();
     }
-
-    private String extractOriginalKey(String key) {
-        // Remove _thumbnail suffix if present
-        String suffix = "_thumbnail";
-        int suffixIndex = key.lastIndexOf(suffix);
-        if (suffixIndex > 0) {
-            return key.substring(0, suffixIndex);
-        }
-        return key;
-    }
 }
\ No newline at end of file
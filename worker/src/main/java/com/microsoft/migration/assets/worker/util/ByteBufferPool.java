@@ -0,0 +1,112 @@
+package com.microsoft.migration.assets.worker.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A small pool of growable byte buffers used to hold images in memory while they are processed.
+ * Buffers that grew beyond the retained size are dropped on release instead of being pooled.
+ */
+public class ByteBufferPool {
+
+    private final BlockingQueue<Buffer> buffers;
+    private final int initialSize;
+    private final int maxRetainedSize;
+
+    public ByteBufferPool(int capacity, int initialSize, int maxRetainedSize) {
+        this.buffers = new ArrayBlockingQueue<>(capacity);
+        this.initialSize = initialSize;
+        this.maxRetainedSize = maxRetainedSize;
+    }
+
+    /**
+     * Take an empty buffer from the pool, or allocate one if the pool is empty
+     */
+    public Buffer acquire() {
+        Buffer buffer = buffers.poll();
+        return buffer != null ? buffer : new Buffer(initialSize);
+    }
+
+    /**
+     * Return a buffer to the pool
+     */
+    public void release(Buffer buffer) {
+        if (buffer != null && buffer.capacity() <= maxRetainedSize) {
+            buffer.reset();
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * A growable byte array output stream whose contents can be read back without copying. Unlike
+     * {@link java.io.ByteArrayOutputStream} it takes no monitor: a buffer is only used by one stage of
+     * one message at a time, and the virtual threads that fill it are never pinned by a lock.
+     */
+    public static class Buffer extends OutputStream {
+        private byte[] buf;
+        private int count;
+
+        Buffer(int size) {
+            buf = new byte[size];
+        }
+
+        public int capacity() {
+            return buf.length;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public void reset() {
+            count = 0;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] source, int offset, int length) {
+            Objects.checkFromIndexSize(offset, length, source.length);
+            ensureCapacity(length);
+            System.arraycopy(source, offset, buf, count, length);
+            count += length;
+        }
+
+        /**
+         * Append the remaining bytes of a heap or direct buffer
+         */
+        public void write(ByteBuffer source) {
+            int length = source.remaining();
+            ensureCapacity(length);
+            source.get(buf, count, length);
+            count += length;
+        }
+
+        public InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        /**
+         * The contents as a read-only buffer over the same bytes
+         */
+        public ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+        }
+
+        private void ensureCapacity(int length) {
+            if (buf.length - count < length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, Math.addExact(count, length)));
+            }
+        }
+    }
+}
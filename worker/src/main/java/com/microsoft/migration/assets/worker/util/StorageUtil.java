@@ -5,11 +5,21 @@ public class StorageUtil {
      * Get the thumbnail key for a given key
      */
     public static String getThumbnailKey(String key) {
+        return getRenditionKey(key, "thumbnail", null);
+    }
+
+    /**
+     * Get the key of a named rendition for a given key. When a format is given the extension
+     * is replaced with it, otherwise the original extension is kept.
+     */
+    public static String getRenditionKey(String key, String renditionName, String format) {
         int dotIndex = key.lastIndexOf('.');
-        if (dotIndex > 0) {
-            return key.substring(0, dotIndex) + "_thumbnail" + key.substring(dotIndex);
+        String baseName = dotIndex > 0 ? key.substring(0, dotIndex) : key;
+        String extension = dotIndex > 0 ? key.substring(dotIndex) : "";
+        if (format != null && !format.isEmpty()) {
+            extension = "." + format;
         }
-        return key + "_thumbnail";
+        return baseName + "_" + renditionName + extension;
     }
 
     /**
@@ -0,0 +1,46 @@
+package com.microsoft.migration.assets.worker.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ByteBufferPoolTest {
+
+    @Test
+    void growsAcrossWritesAndReadsBackWithoutCopying() throws IOException {
+        ByteBufferPool pool = new ByteBufferPool(1, 4, 64);
+        ByteBufferPool.Buffer buffer = pool.acquire();
+
+        buffer.write(1);
+        buffer.write(new byte[]{9, 2, 3, 9}, 1, 2);
+        buffer.write(ByteBuffer.allocateDirect(3).put(new byte[]{4, 5, 6}).flip());
+
+        assertEquals(6, buffer.size());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6}, buffer.toInputStream().readAllBytes());
+        ByteBuffer contents = buffer.toByteBuffer();
+        assertEquals(6, contents.remaining());
+        assertEquals(6, contents.get(5));
+    }
+
+    @Test
+    void reusesReleasedBuffersUpToTheRetainedSize() {
+        ByteBufferPool pool = new ByteBufferPool(1, 4, 8);
+        ByteBufferPool.Buffer buffer = pool.acquire();
+        buffer.write(ByteBuffer.wrap(new byte[3]));
+        pool.release(buffer);
+
+        ByteBufferPool.Buffer reused = pool.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.size());
+
+        reused.write(ByteBuffer.wrap(new byte[16]));
+        pool.release(reused);
+        assertNotSame(reused, pool.acquire());
+    }
+}
@@ -0,0 +1,186 @@
+package com.microsoft.migration.assets.worker.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageResamplerTest {
+
+    @Test
+    void resizesToTargetDimensions() {
+        BufferedImage source = gradient(400, 300, BufferedImage.TYPE_INT_RGB);
+
+        ImageResampler.Result result = ImageResampler.resize(source, 100, 75, false);
+
+        assertEquals(100, result.image().getWidth());
+        assertEquals(75, result.image().getHeight());
+        assertEquals(BufferedImage.TYPE_INT_RGB, result.image().getType());
+        assertNull(result.unsharpened());
+    }
+
+    @Test
+    void keepsUnsharpenedCopyWhenAsked() {
+        BufferedImage source = gradient(400, 300, BufferedImage.TYPE_INT_RGB);
+
+        ImageResampler.Result result = ImageResampler.resize(source, 100, 75, true);
+
+        assertNotNull(result.unsharpened());
+        assertEquals(100, result.unsharpened().getWidth());
+        assertEquals(75, result.unsharpened().getHeight());
+    }
+
+    @Test
+    void doesNotUpscaleSmallImages() {
+        BufferedImage source = gradient(50, 40, BufferedImage.TYPE_INT_RGB);
+
+        ImageResampler.Result result = ImageResampler.resize(source, 200, 160, false);
+
+        assertEquals(50, result.image().getWidth());
+        assertEquals(40, result.image().getHeight());
+    }
+
+    @Test
+    void leavesBorderUnsharpened() {
+        BufferedImage source = checkerboard(240, 180, 6);
+
+        ImageResampler.Result result = ImageResampler.resize(source, 80, 60, true);
+        BufferedImage sharpened = result.image();
+        BufferedImage plain = result.unsharpened();
+
+        // Like ConvolveOp.EDGE_NO_OP, the outermost rows and columns are copied without the kernel
+        for (int x = 0; x < 80; x++) {
+            assertEquals(plain.getRGB(x, 0), sharpened.getRGB(x, 0));
+            assertEquals(plain.getRGB(x, 59), sharpened.getRGB(x, 59));
+        }
+        for (int y = 0; y < 60; y++) {
+            assertEquals(plain.getRGB(0, y), sharpened.getRGB(0, y));
+            assertEquals(plain.getRGB(79, y), sharpened.getRGB(79, y));
+        }
+    }
+
+    @Test
+    void transparentPixelsDoNotBleedIntoOpaqueEdges() {
+        // An opaque red disc on a fully transparent (black) background
+        BufferedImage source = new BufferedImage(300, 300, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 300; y++) {
+            for (int x = 0; x < 300; x++) {
+                double distance = Math.hypot(x - 150, y - 150);
+                source.setRGB(x, y, distance < 100 ? 0xffff0000 : 0x00000000);
+            }
+        }
+
+        BufferedImage image = ImageResampler.resize(source, 75, 75, false).image();
+
+        assertEquals(BufferedImage.TYPE_INT_ARGB, image.getType());
+        assertEquals(0, image.getRGB(0, 0) >>> 24, "background stays transparent");
+        assertEquals(0xffff0000, image.getRGB(37, 37), "centre stays opaque red");
+        for (int y = 0; y < 75; y++) {
+            for (int x = 0; x < 75; x++) {
+                int pixel = image.getRGB(x, y);
+                int alpha = pixel >>> 24;
+                if (alpha >= 32) {
+                    // Premultiplied filtering keeps edge pixels red instead of darkening them towards black
+                    assertTrue(((pixel >> 16) & 0xff) >= 200, "edge pixel darkened at " + x + "," + y);
+                    assertTrue(((pixel >> 8) & 0xff) <= 8, "edge pixel tinted at " + x + "," + y);
+                    assertTrue((pixel & 0xff) <= 8, "edge pixel tinted at " + x + "," + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    void matchesGraphics2dPathOnSmoothImage() {
+        BufferedImage source = gradient(640, 480, BufferedImage.TYPE_INT_RGB);
+
+        BufferedImage expected = sharpen(progressiveScaling(source, 160, 120));
+        BufferedImage actual = ImageResampler.resize(source, 160, 120, false).image();
+
+        // Both filters reconstruct smooth content closely; they differ only in fine detail
+        double total = 0;
+        int maximum = 0;
+        for (int y = 1; y < 119; y++) {
+            for (int x = 1; x < 159; x++) {
+                int a = expected.getRGB(x, y);
+                int b = actual.getRGB(x, y);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int difference = Math.abs(((a >> shift) & 0xff) - ((b >> shift) & 0xff));
+                    total += difference;
+                    maximum = Math.max(maximum, difference);
+                }
+            }
+        }
+        double mean = total / (158 * 118 * 3);
+        assertTrue(mean < 1.5, "mean channel difference " + mean);
+        assertTrue(maximum <= 8, "maximum channel difference " + maximum);
+    }
+
+    private static BufferedImage gradient(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = 255 * x / (width - 1);
+                int g = 255 * y / (height - 1);
+                int b = (int) (127.5 + 127.5 * Math.sin(x * 2 * Math.PI / width) * Math.cos(y * 2 * Math.PI / height));
+                image.setRGB(x, y, 0xff000000 | r << 16 | g << 8 | b);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage checkerboard(int width, int height, int cell) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, ((x / cell + y / cell) % 2 == 0) ? 0xffffff : 0x202020);
+            }
+        }
+        return image;
+    }
+
+    // The scaling and sharpening the worker used before ImageResampler, kept as a reference
+
+    private static BufferedImage progressiveScaling(BufferedImage source, int targetWidth, int targetHeight) {
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        BufferedImage result = source;
+        while (currentWidth > targetWidth * 1.5 || currentHeight > targetHeight * 1.5) {
+            currentWidth = Math.max(currentWidth / 2, targetWidth);
+            currentHeight = Math.max(currentHeight / 2, targetHeight);
+            result = scaleImage(result, currentWidth, currentHeight);
+        }
+        if (currentWidth != targetWidth || currentHeight != targetHeight) {
+            result = scaleImage(result, targetWidth, targetHeight);
+        }
+        return result;
+    }
+
+    private static BufferedImage scaleImage(BufferedImage source, int width, int height) {
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = result.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.drawImage(source, 0, 0, width, height, null);
+        g2d.dispose();
+        return result;
+    }
+
+    private static BufferedImage sharpen(BufferedImage image) {
+        float[] sharpenMatrix = {
+            0, -0.2f, 0,
+            -0.2f, 1.8f, -0.2f,
+            0, -0.2f, 0
+        };
+        ConvolveOp convolveOp = new ConvolveOp(new Kernel(3, 3, sharpenMatrix), ConvolveOp.EDGE_NO_OP, null);
+        BufferedImage output = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        return convolveOp.filter(image, output);
+    }
+}